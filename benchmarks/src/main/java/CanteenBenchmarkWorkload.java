@@ -0,0 +1,126 @@
+import byteme.benchmarks.CanteenWorkload;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// A canteen of the requested size for CanteenBenchmarks: menuSize items spread over a few
+// categories, and customers with ordersPerCustomer orders each, of which about one in ten is still
+// in the kitchen. Each call picks the next keyword, category or customer in turn, so repeated
+// calls do not hit exactly the same data. Order journals and save files go to a temp directory.
+public class CanteenBenchmarkWorkload implements CanteenWorkload {
+    private static final String[] CATEGORIES = {"Snacks", "Meals", "Beverages", "Desserts", "Breakfast"};
+    private static final String[] WORDS = {"Paneer", "Masala", "Dosa", "Chai", "Cold", "Coffee", "Veg", "Burger",
+            "Tikka", "Roll", "Aloo", "Soda", "Fries", "Pizza", "Wrap", "Lassi"};
+    private static final String[] KEYWORDS = {"dosa", "cold coffee", "ur", "tikka roll", "pizza 1", "xyz"};
+
+    private ByteMeCanteenSystem system;
+    private Path directory;
+    private File saveFile;
+    private List<FoodItem> items;
+    private String[] loginIds;
+    private int next;
+
+    @Override
+    public void setUp(int menuSize, int customers, int ordersPerCustomer) throws IOException {
+        directory = Files.createTempDirectory("byteme-benchmarks");
+        saveFile = directory.resolve("byte_me.bin").toFile();
+        system = new ByteMeCanteenSystem(false);
+        system.orderJournal = new OrderJournal(directory.toFile());
+
+        Random random = new Random(42);
+        for (int i = 0; i < menuSize; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            system.addMenuItem(new FoodItem(name, 1 + random.nextInt(2000) / 100.0, CATEGORIES[i % CATEGORIES.length], random.nextInt(10) > 0));
+        }
+        items = new ArrayList<>(system.menu.values());
+
+        loginIds = new String[customers];
+        for (int c = 0; c < customers; c++) {
+            loginIds[c] = "customer" + c;
+            system.customerAccounts.put(loginIds[c], "password");
+            for (int o = 0; o < ordersPerCustomer; o++) {
+                Order order = new Order(randomCart(random), null);
+                int stage = random.nextInt(20);
+                order.status = stage == 0 ? OrderStatus.PENDING : stage == 1 ? OrderStatus.PREPARING : OrderStatus.COMPLETED;
+                system.addOrder(loginIds[c], order);
+            }
+        }
+        CanteenCodec.save(system, saveFile);
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        system.closeOrderJournal();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Override
+    public Object searchMenu() {
+        return system.searchMenu(KEYWORDS[next(KEYWORDS.length)]);
+    }
+
+    @Override
+    public Object filterMenuByCategory() {
+        return system.filterMenuByCategory(CATEGORIES[next(CATEGORIES.length)]);
+    }
+
+    @Override
+    public Object sortMenuByPrice() {
+        return system.sortMenuByPrice(next(2) == 0);
+    }
+
+    @Override
+    public Object getPendingOrders() {
+        return system.getPendingOrders();
+    }
+
+    // Orders (and their journal lines) accumulate for the length of the trial, as they would in a
+    // day of trading.
+    @Override
+    public Object createOrder() {
+        int customer = next(loginIds.length);
+        List<CartItem> cart = List.of(new CartItem(items.get(customer % items.size()), 1 + customer % 3));
+        system.createOrder(loginIds[customer], cart, null, system);
+        return cart;
+    }
+
+    // What ByteMe.saveByteMeSystemData / loadByteMeSystemData do, against a temp file.
+    @Override
+    public Object save() throws IOException {
+        CanteenCodec.save(system, saveFile);
+        return saveFile;
+    }
+
+    @Override
+    public Object load() throws IOException {
+        // Each loaded system is thrown away, so let go of the snapshot it keeps open.
+        ByteMeCanteenSystem loaded = CanteenCodec.load(saveFile);
+        loaded.closePagedHistory();
+        return loaded;
+    }
+
+    private List<CartItem> randomCart(Random random) {
+        List<CartItem> cart = new ArrayList<>();
+        int lines = 1 + random.nextInt(3);
+        for (int i = 0; i < lines; i++) {
+            cart.add(new CartItem(items.get(random.nextInt(items.size())), 1 + random.nextInt(3)));
+        }
+        return cart;
+    }
+
+    private int next(int bound) {
+        next = next == Integer.MAX_VALUE ? 0 : next + 1;
+        return next % bound;
+    }
+}
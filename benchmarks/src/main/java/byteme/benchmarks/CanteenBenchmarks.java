@@ -0,0 +1,88 @@
+package byteme.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Throughput and sampled latency of the canteen's hot paths, over menu size, customer count and
+// orders per customer. Run with:
+//
+//   mvn -B package -pl benchmarks -am && java -jar benchmarks/target/benchmarks.jar
+//
+// Any JMH options can follow (e.g. -p menuSize=1000 or a benchmark name regex). Unless another
+// profiler is asked for, the GC profiler is added so each result includes its allocation rate.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CanteenBenchmarks {
+    @Param({"50", "1000"})
+    int menuSize;
+
+    @Param({"100", "1000"})
+    int customers;
+
+    @Param({"10", "100"})
+    int ordersPerCustomer;
+
+    private CanteenWorkload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = (CanteenWorkload) Class.forName("CanteenBenchmarkWorkload").getDeclaredConstructor().newInstance();
+        workload.setUp(menuSize, customers, ordersPerCustomer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workload.tearDown();
+    }
+
+    @Benchmark
+    public Object searchMenu() {
+        return workload.searchMenu();
+    }
+
+    @Benchmark
+    public Object filterMenuByCategory() {
+        return workload.filterMenuByCategory();
+    }
+
+    @Benchmark
+    public Object sortMenuByPrice() {
+        return workload.sortMenuByPrice();
+    }
+
+    @Benchmark
+    public Object getPendingOrders() {
+        return workload.getPendingOrders();
+    }
+
+    @Benchmark
+    public Object createOrder() {
+        return workload.createOrder();
+    }
+
+    @Benchmark
+    public Object saveByteMeSystemData() throws Exception {
+        return workload.save();
+    }
+
+    @Benchmark
+    public Object loadByteMeSystemData() throws Exception {
+        return workload.load();
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(List.of(args));
+        if (!options.contains("-prof")) {
+            options.add("-prof");
+            options.add("gc");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,24 @@
+package byteme.benchmarks;
+
+// The canteen operations CanteenBenchmarks measures. The canteen classes live in the default
+// package, which JMH benchmark classes cannot (and code in a named package cannot refer to it), so
+// the benchmarks drive them through this interface. The implementation is CanteenBenchmarkWorkload.
+public interface CanteenWorkload {
+    void setUp(int menuSize, int customers, int ordersPerCustomer) throws Exception;
+
+    void tearDown() throws Exception;
+
+    Object searchMenu();
+
+    Object filterMenuByCategory();
+
+    Object sortMenuByPrice();
+
+    Object getPendingOrders();
+
+    Object createOrder();
+
+    Object save() throws Exception;
+
+    Object load() throws Exception;
+}
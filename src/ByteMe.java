@@ -2,15 +2,30 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.Date;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+import javax.swing.table.TableRowSorter;
 
 
 class Review implements Serializable{
+    private static final long serialVersionUID = 3392013367483689636L;
     private String customerName;
     private String reviewText;
     private int rating;
@@ -23,6 +38,29 @@ class Review implements Serializable{
         this.reviewDate = new Date();
     }
 
+    Review(String customerName, String reviewText, int rating, Date reviewDate) {
+        this.customerName = customerName;
+        this.reviewText = reviewText;
+        this.rating = rating;
+        this.reviewDate = reviewDate;
+    }
+
+    public String getCustomerName() {
+        return customerName;
+    }
+
+    public String getReviewText() {
+        return reviewText;
+    }
+
+    public int getRating() {
+        return rating;
+    }
+
+    public Date getReviewDate() {
+        return reviewDate;
+    }
+
     @Override
     public String toString() {
         return "Review by " + customerName + " on " + reviewDate +
@@ -30,45 +68,176 @@ class Review implements Serializable{
     }
 }
 
+// One page of an item's reviews, newest first. nextCursor is 0 once the oldest review has been read.
+class ReviewPage {
+    final List<Review> reviews;
+    final int nextCursor;
+
+    ReviewPage(List<Review> reviews, int nextCursor) {
+        this.reviews = reviews;
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor > 0;
+    }
+}
+
 class Order implements Serializable{
-    List<CartItem> items;
-    String status;
+    private static final long serialVersionUID = 3500545528695209932L;
+    // Old byte_me.ser files hold each order's lines as a List<CartItem>.
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("items", List.class),
+            new ObjectStreamField("status", String.class),
+            new ObjectStreamField("specialRequest", String.class),
+            new ObjectStreamField("loginId", String.class),
+            new ObjectStreamField("placedAt", long.class),
+            new ObjectStreamField("id", long.class)
+    };
+    // Lines are captured at checkout as parallel arrays (item name, quantity, unit price in cents),
+    // so an order holds no FoodItem and later price changes never rewrite its total. Never modified
+    // after construction.
+    String[] itemNames;
+    int[] quantities;
+    long[] unitPriceCents;
+    transient long totalCents;
+    // Assigned by ByteMeCanteenSystem when the order is placed; 0 until then.
+    long id;
+    volatile OrderStatus status;
     String specialRequest;
+    String loginId;
+    long placedAt;
+    transient ByteMeCanteenSystem owner;
 
     public Order(List<CartItem> items, String specialRequest) {
-        this.items = new ArrayList<>(items);
-        this.status = "Pending";
+        captureLines(items);
+        this.status = OrderStatus.PENDING;
+        this.specialRequest = specialRequest;
+        this.placedAt = System.currentTimeMillis();
+    }
+
+    Order(String[] itemNames, int[] quantities, long[] unitPriceCents, String specialRequest) {
+        setLines(itemNames, quantities, unitPriceCents);
+        this.status = OrderStatus.PENDING;
         this.specialRequest = specialRequest;
+        this.placedAt = System.currentTimeMillis();
     }
 
     public Order() {
+        setLines(new String[0], new int[0], new long[0]);
+    }
 
+    private void captureLines(List<CartItem> items) {
+        String[] names = new String[items.size()];
+        int[] quantities = new int[items.size()];
+        long[] cents = new long[items.size()];
+        for (int i = 0; i < names.length; i++) {
+            CartItem cartItem = items.get(i);
+            names[i] = cartItem.item.name;
+            quantities[i] = cartItem.quantity;
+            cents[i] = cartItem.unitPriceCents;
+        }
+        setLines(names, quantities, cents);
     }
 
-    public String getStatus() {
+    private void setLines(String[] itemNames, int[] quantities, long[] unitPriceCents) {
+        this.itemNames = itemNames;
+        this.quantities = quantities;
+        this.unitPriceCents = unitPriceCents;
+        long total = 0;
+        for (int i = 0; i < itemNames.length; i++) {
+            total += unitPriceCents[i] * quantities[i];
+        }
+        this.totalCents = total;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public OrderStatus getStatus() {
         return status;
     }
 
-    public void setStatus(String status) {
+    // Returns false (and leaves the order alone) if the order cannot move to this status.
+    public boolean setStatus(OrderStatus status) {
+        if (owner != null) {
+            return owner.changeOrderStatus(this, status);
+        }
+        if (!this.status.canBecome(status)) {
+            return false;
+        }
         this.status = status;
+        return true;
     }
 
-    public void cancelOrder() {
-        this.status = "Canceled";
+    public boolean cancelOrder() {
+        return setStatus(OrderStatus.CANCELED);
     }
 
-    public List<CartItem> getItems() {
-        return items;
+    public int getLineCount() {
+        return itemNames.length;
+    }
+
+    public String getItemName(int line) {
+        return itemNames[line];
+    }
+
+    public int getQuantity(int line) {
+        return quantities[line];
+    }
+
+    public long getUnitPriceCents(int line) {
+        return unitPriceCents[line];
+    }
+
+    public long getTotalCents() {
+        return totalCents;
     }
 
     public String getSpecialRequest() {
         return specialRequest;
     }
 
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        List<CartItem> items = (List<CartItem>) fields.get("items", null);
+        captureLines(items != null ? items : List.of());
+        status = OrderStatus.migrate((String) fields.get("status", null));
+        specialRequest = (String) fields.get("specialRequest", null);
+        loginId = (String) fields.get("loginId", null);
+        placedAt = fields.get("placedAt", 0L);
+        id = fields.get("id", 0L);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        List<CartItem> items = new ArrayList<>(itemNames.length);
+        for (int i = 0; i < itemNames.length; i++) {
+            items.add(new CartItem(new FoodItem(itemNames[i], unitPriceCents[i] / 100.0, null, true), quantities[i], unitPriceCents[i]));
+        }
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("items", items);
+        fields.put("status", status.getLabel());
+        fields.put("specialRequest", specialRequest);
+        fields.put("loginId", loginId);
+        fields.put("placedAt", placedAt);
+        fields.put("id", id);
+        out.writeFields();
+    }
+
     @Override
     public String toString() {
+        StringBuilder lines = new StringBuilder("[");
+        for (int i = 0; i < itemNames.length; i++) {
+            if (i > 0) {
+                lines.append(", ");
+            }
+            lines.append(itemNames[i]).append(" - Quantity: ").append(quantities[i])
+                    .append(" - Total: $").append(unitPriceCents[i] * quantities[i] / 100.0);
+        }
         return "Order{" +
-                "items=" + items +
+                "items=" + lines.append(']') +
                 ", status='" + status + '\'' +
                 ", specialRequest='" + specialRequest + '\'' +
                 '}';
@@ -77,11 +246,27 @@ class Order implements Serializable{
 
 
 class FoodItem implements Serializable{
+    private static final long serialVersionUID = -1558857973632405411L;
+    // Reviews are no longer part of an item's own state, but old byte_me.ser files still carry them.
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("name", String.class),
+            new ObjectStreamField("price", double.class),
+            new ObjectStreamField("category", String.class),
+            new ObjectStreamField("available", boolean.class),
+            new ObjectStreamField("reviews", List.class)
+    };
     String name;
-    double price;
+    volatile double price;
     String category;
-    boolean available;
-    List<Review> reviews;
+    volatile boolean available;
+    // Loaded from the owner's ReviewStore on first use; null until then.
+    transient List<Review> reviews;
+    // Running rating aggregates, so an item's score never needs its reviews. CanteenCodec saves
+    // them with the item; Java serialization does not.
+    transient int reviewCount;
+    transient long ratingSum;
+    transient int[] ratingHistogram = new int[5];
+    transient ByteMeCanteenSystem owner;
 
     public FoodItem(String name, double price, String category, boolean available) {
         this.name = name;
@@ -92,11 +277,19 @@ class FoodItem implements Serializable{
     }
 
     public void setPrice(double price) {
-        this.price = price;
+        if (owner != null) {
+            owner.changeMenuItem(this, price, available);
+        } else {
+            this.price = price;
+        }
     }
 
     public void setAvailable(boolean available) {
-        this.available = available;
+        if (owner != null) {
+            owner.changeMenuItem(this, price, available);
+        } else {
+            this.available = available;
+        }
     }
 
     public String getName() {
@@ -104,13 +297,148 @@ class FoodItem implements Serializable{
     }
 
     public void addReview(Review review) {
-        reviews.add(review);
+        if (owner != null) {
+            owner.addReview(this, review);
+        } else {
+            appendReview(review, null);
+        }
     }
 
-    public List<Review> getReviews() {
+    synchronized void appendReview(Review review, ReviewStore store) {
+        List<Review> loaded = loadReviews(store);
+        if (store != null) {
+            try {
+                store.append(name, List.of(review));
+            } catch (IOException e) {
+                System.err.println("Error writing review: " + e.getMessage());
+            }
+        }
+        loaded.add(review);
+        countRating(review.getRating());
+    }
+
+    // Log replay: the review itself is already in the store unless this item's reviews are still
+    // held in memory (a new item, or data from before the store existed).
+    synchronized void replayReview(Review review) {
+        if (reviews != null) {
+            reviews.add(review);
+        }
+        countRating(review.getRating());
+    }
+
+    // Moves reviews held in memory into the store. If the store already has this item's segment,
+    // it wins and the aggregates are recounted from it.
+    synchronized void migrateReviews(ReviewStore store) {
+        if (reviews == null) {
+            return;
+        }
+        if (store.hasSegment(name)) {
+            reviews = null;
+            loadReviews(store);
+        } else if (!reviews.isEmpty()) {
+            try {
+                store.append(name, reviews);
+            } catch (IOException e) {
+                System.err.println("Error writing review: " + e.getMessage());
+                return;
+            }
+            reviews = null;
+        }
+    }
+
+    private List<Review> loadReviews(ReviewStore store) {
+        if (reviews == null) {
+            if (store == null) {
+                reviews = new ArrayList<>();
+            } else {
+                reviews = store.read(name);
+                reviewCount = 0;
+                ratingSum = 0;
+                ratingHistogram = new int[5];
+                reviews.forEach(review -> countRating(review.getRating()));
+            }
+        }
         return reviews;
     }
 
+    private ReviewStore store() {
+        return owner != null ? owner.reviewStore : null;
+    }
+
+    public synchronized List<Review> getReviews() {
+        return new ArrayList<>(loadReviews(store()));
+    }
+
+    public synchronized int getReviewCount() {
+        return reviewCount;
+    }
+
+    public synchronized double getAverageRating() {
+        return reviewCount == 0 ? 0 : (double) ratingSum / reviewCount;
+    }
+
+    public synchronized long getRatingSum() {
+        return ratingSum;
+    }
+
+    // How many reviews gave each rating; index 0 holds the 1-star count.
+    public synchronized int[] getRatingHistogram() {
+        return ratingHistogram.clone();
+    }
+
+    synchronized void restoreRatings(long ratingSum, int[] ratingHistogram) {
+        this.ratingSum = ratingSum;
+        this.ratingHistogram = ratingHistogram;
+        this.reviewCount = Arrays.stream(ratingHistogram).sum();
+    }
+
+    // Up to limit reviews, newest first, starting below cursor. A cursor at or above
+    // getReviewCount() starts at the newest review; each page's next cursor stays valid while
+    // new reviews are added.
+    public synchronized ReviewPage getReviews(int cursor, int limit) {
+        List<Review> loaded = loadReviews(store());
+        int end = Math.min(cursor, loaded.size());
+        int start = Math.max(0, end - limit);
+        List<Review> page = new ArrayList<>(end - start);
+        for (int i = end - 1; i >= start; i--) {
+            page.add(loaded.get(i));
+        }
+        return new ReviewPage(page, start);
+    }
+
+    private void countRating(int rating) {
+        reviewCount++;
+        ratingSum += rating;
+        ratingHistogram[Math.max(1, Math.min(5, rating)) - 1]++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        name = (String) fields.get("name", null);
+        price = fields.get("price", 0.0);
+        category = (String) fields.get("category", null);
+        available = fields.get("available", false);
+        List<Review> saved = (List<Review>) fields.get("reviews", null);
+        reviews = saved != null ? new ArrayList<>(saved) : null;
+        ratingHistogram = new int[5];
+        if (reviews != null) {
+            reviews.forEach(review -> countRating(review.getRating()));
+        }
+    }
+
+    // Only reviews still held in memory are written; ones in the ReviewStore stay there rather than
+    // being read back in just to serialize the item.
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("name", name);
+        fields.put("price", price);
+        fields.put("category", category);
+        fields.put("available", available);
+        fields.put("reviews", reviews != null ? new ArrayList<>(reviews) : null);
+        out.writeFields();
+    }
+
     @Override
     public String toString() {
         return name + " - $" + price + " - " + category + " - " + (available ? "Available" : "Unavailable");
@@ -118,16 +446,37 @@ class FoodItem implements Serializable{
 }
 
 class CartItem implements Serializable{
+    private static final long serialVersionUID = 15592558546347931L;
     FoodItem item;
     int quantity;
+    // The item's price when the line was created; later menu price changes do not touch it.
+    transient long unitPriceCents;
 
     public CartItem(FoodItem item, int quantity) {
+        this(item, quantity, priceCents(item));
+    }
+
+    CartItem(FoodItem item, int quantity, long unitPriceCents) {
         this.item = item;
         this.quantity = quantity;
+        this.unitPriceCents = unitPriceCents;
+    }
+
+    public long getTotalCents() {
+        return unitPriceCents * quantity;
     }
 
     public double getTotalPrice() {
-        return item.price * quantity;
+        return getTotalCents() / 100.0;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        unitPriceCents = priceCents(item);
+    }
+
+    private static long priceCents(FoodItem item) {
+        return item == null ? 0 : Math.round(item.price * 100);
     }
 
     @Override
@@ -136,12 +485,136 @@ class CartItem implements Serializable{
     }
 }
 
+// One customer's cart: one line per item (keyed by lower-cased name), in the order items were first added.
+// Each line keeps the unit price (in cents) the item had when it was first added, and the total is
+// kept up to date in cents from those same prices, so checkout charges what the order records.
+class Cart {
+    private final LinkedHashMap<String, CartItem> lines = new LinkedHashMap<>();
+    private long totalCents;
+
+    public synchronized void add(FoodItem item, int quantity) {
+        CartItem line = lines.get(key(item.name));
+        if (line == null) {
+            line = new CartItem(item, quantity);
+            lines.put(key(item.name), line);
+        } else {
+            line.quantity += quantity;
+        }
+        totalCents += line.unitPriceCents * quantity;
+    }
+
+    public synchronized boolean setQuantity(String itemName, int quantity) {
+        CartItem line = lines.get(key(itemName));
+        if (line == null) {
+            return false;
+        }
+        totalCents += line.unitPriceCents * (quantity - line.quantity);
+        line.quantity = quantity;
+        return true;
+    }
+
+    public synchronized boolean remove(String itemName) {
+        CartItem line = lines.remove(key(itemName));
+        if (line == null) {
+            return false;
+        }
+        totalCents -= line.getTotalCents();
+        return true;
+    }
+
+    public synchronized long getTotalCents() {
+        return totalCents;
+    }
+
+    public synchronized double getTotal() {
+        return totalCents / 100.0;
+    }
+
+    public synchronized boolean contains(String itemName) {
+        return lines.containsKey(key(itemName));
+    }
+
+    public synchronized boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    public synchronized void clear() {
+        lines.clear();
+        totalCents = 0;
+    }
+
+    // Copies, so an order placed from the cart does not change if the cart is edited afterwards.
+    public synchronized List<CartItem> getItems() {
+        List<CartItem> items = new ArrayList<>(lines.size());
+        lines.values().forEach(line -> items.add(new CartItem(line.item, line.quantity, line.unitPriceCents)));
+        return items;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return lines.values().toString();
+    }
+
+    private static String key(String itemName) {
+        return itemName.toLowerCase();
+    }
+}
+
 class ByteMeCanteenSystem implements Serializable {
-    TreeMap<String, FoodItem> menu = new TreeMap<>();
-    HashMap<String, String> customerAccounts = new HashMap<>();
-    HashMap<String, List<Order>> orderHistory = new HashMap<>();
+    private static final long serialVersionUID = 6657939260926754037L;
+    // Keeps the serialized form of earlier versions, whose fields were a TreeMap and two HashMaps.
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("menu", TreeMap.class),
+            new ObjectStreamField("customerAccounts", HashMap.class),
+            new ObjectStreamField("orderHistory", HashMap.class),
+            new ObjectStreamField("logSequence", long.class)
+    };
+    private static final int CUSTOMER_LOCK_STRIPES = 64;
+    static final int REVIEW_PAGE_SIZE = 5;
+
+    // Locking: mutators hold stateLock's read lock (shared) so a snapshot can take its write lock
+    // and see a consistent image. Menu writes also take menuLock; a customer's order history is
+    // guarded by that customer's stripe in customerLocks, so customers never wait on each other.
+    ConcurrentSkipListMap<String, FoodItem> menu = new ConcurrentSkipListMap<>();
+    ConcurrentHashMap<String, String> customerAccounts = new ConcurrentHashMap<>();
+    ConcurrentHashMap<String, List<Order>> orderHistory = new ConcurrentHashMap<>();
+    long logSequence;
+    transient ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+    transient ReentrantReadWriteLock menuLock = new ReentrantReadWriteLock();
+    transient ReentrantReadWriteLock[] customerLocks = newCustomerLocks();
+    transient EnumMap<OrderStatus, LinkedHashSet<Order>> liveOrdersByStatus = new EnumMap<>(OrderStatus.class);
+    // Orders in each status (live or not), indexed by ordinal; guarded by liveOrdersByStatus.
+    transient long[] statusCounts = new long[OrderStatus.values().length];
+    transient OrderIndex ordersById = new OrderIndex();
+    transient AtomicLong lastOrderId = new AtomicLong();
+    transient ConcurrentHashMap<String, FoodItem> menuByLowerName = new ConcurrentHashMap<>();
+    transient MenuSearchIndex searchIndex = new MenuSearchIndex();
+    transient HashMap<String, TreeMap<String, FoodItem>> menuByCategory = new HashMap<>();
+    transient TreeMap<Double, TreeMap<String, FoodItem>> menuByPrice = new TreeMap<>();
+    transient HashMap<String, Double> indexedPrices = new HashMap<>();
+    transient ConcurrentHashMap<String, Cart> carts = new ConcurrentHashMap<>();
+    transient SalesReport salesReport = new SalesReport();
+    transient PopularItemsTracker popularItems = new PopularItemsTracker();
+    transient volatile OrderJournal orderJournal;
+    transient volatile OperationLog operationLog;
+    transient volatile ReviewStore reviewStore;
+    transient CanteenMetrics metrics = new CanteenMetrics(this);
+    transient CopyOnWriteArrayList<MenuListener> menuListeners = new CopyOnWriteArrayList<>();
+    // Customers whose history CanteenCodec.load left on disk; null if every history was read at load.
+    // Reading a page in or dropping it holds stateLock's read lock and the customer's lock.
+    transient volatile PagedOrderHistory pagedHistory;
+    // Customer numbers for the snapshot's page directory and owners table; set by the first load or
+    // snapshot that needs them.
+    transient volatile OrderOwners orderOwners;
 
     public ByteMeCanteenSystem() {
+        this(true);
+    }
+
+    ByteMeCanteenSystem(boolean defaultMenu) {
+        if (!defaultMenu) {
+            return;
+        }
         addItemToMenu("Burger", 5.00, "Snacks", true);
         addItemToMenu("Fries", 2.50, "Snacks", true);
         addItemToMenu("Soda", 1.50, "Beverages", true);
@@ -149,168 +622,810 @@ class ByteMeCanteenSystem implements Serializable {
         addItemToMenu("Coffee", 3.00, "Beverages", true);
     }
 
+    // Names are unique ignoring case: adding "burger" replaces "Burger".
     public void addMenuItem(FoodItem item) {
-        menu.put(item.getName(), item);
+        lockMenu();
+        try {
+            FoodItem variant = menuByLowerName.get(item.getName().toLowerCase());
+            if (variant != null && !variant.getName().equals(item.getName())) {
+                menu.remove(variant.getName());
+                variant.owner = null;
+                unindexMenuItem(variant.getName(), variant);
+                menuListeners.forEach(listener -> listener.itemRemoved(variant));
+            }
+            FoodItem replaced = menu.put(item.getName(), item);
+            if (replaced != null) {
+                replaced.owner = null;
+                unindexMenuItem(item.getName(), replaced);
+                menuListeners.forEach(listener -> listener.itemRemoved(replaced));
+            }
+            item.owner = this;
+            indexMenuItem(item.getName(), item);
+            if (operationLog != null) {
+                operationLog.addMenuItem(item);
+            }
+            menuListeners.forEach(listener -> listener.itemAdded(item));
+        } finally {
+            unlockMenu();
+        }
     }
 
 
     public boolean removeMenuItem(String itemName) {
-        if (menu.containsKey(itemName)) {
-            menu.remove(itemName);
-            return true;
+        lockMenu();
+        try {
+            FoodItem removed = getMenuItem(itemName);
+            if (removed != null) {
+                menu.remove(removed.getName());
+                removed.owner = null;
+                unindexMenuItem(removed.getName(), removed);
+                if (operationLog != null) {
+                    operationLog.removeMenuItem(removed.getName());
+                }
+                menuListeners.forEach(listener -> listener.itemRemoved(removed));
+                return true;
+            }
+            return false;
+        } finally {
+            unlockMenu();
+        }
+    }
+
+    // Registers a listener for every later menu change and returns the menu as it stood when the
+    // listener was added.
+    public List<FoodItem> addMenuListener(MenuListener listener) {
+        menuLock.readLock().lock();
+        try {
+            menuListeners.add(listener);
+            return new ArrayList<>(menu.values());
+        } finally {
+            menuLock.readLock().unlock();
         }
-        return false;
     }
 
+    public void removeMenuListener(MenuListener listener) {
+        menuListeners.remove(listener);
+    }
+
+    // Case-insensitive lookup used by every path that resolves an item from user input.
     public FoodItem getMenuItem(String itemName) {
-        return menu.get(itemName);
+        return menuByLowerName.get(itemName.toLowerCase());
     }
 
     public void addItemToMenu(String name, double price, String category, boolean available) {
-        menu.put(name, new FoodItem(name, price, category, available));
+        addMenuItem(new FoodItem(name, price, category, available));
     }
 
     public void displayAllItems() {
-        menu.values().forEach(item -> System.out.println(item));
+        menu.values().forEach(item -> SessionIO.out().println(item));
     }
 
-    public void guidisplayAllItems(DefaultTableModel tableModel) {
+    public void guidisplayPopularItems(DefaultTableModel tableModel) {
         tableModel.setRowCount(0);
-        menu.values().forEach(( item) -> tableModel.addRow(new Object[]{item}));
-    }
-
-    public void orderhistory(DefaultTableModel tableModel, Scanner scanner, ByteMeCanteenSystem system, String loginId){
-        List<Order> orders = system.getOrderHistory(loginId);
-        if (orders.isEmpty()) {
-            tableModel.addRow(new Object[]{"No order history found."});
-        } else {
-            tableModel.addRow(new Object[]{"Your Order History:"});
-            int orderNumber = 1;
-            for (Order order : orders) {
-                tableModel.addRow(new Object[]{"Order #" + orderNumber + ": " + order});
-                orderNumber++;
-            }
-        }
+        tableModel.addRow(new Object[]{"Popular in the last hour:"});
+        popularItems.topItems(60, 10).forEach((entry) -> tableModel.addRow(new Object[]{entry.getKey() + " - " + entry.getValue() + " ordered"}));
     }
 
     public List<FoodItem> searchMenu(String keyword) {
-        return menu.values().stream().filter(item -> item.name.toLowerCase().contains(keyword.toLowerCase())).collect(Collectors.toList());
+        long start = System.nanoTime();
+        menuLock.readLock().lock();
+        try {
+            return searchIndex.search(keyword, menu).stream().map(menu::get).collect(Collectors.toList());
+        } finally {
+            menuLock.readLock().unlock();
+            metrics.record(CanteenMetrics.Operation.SEARCH_MENU, start);
+        }
     }
 
     public List<FoodItem> filterMenuByCategory(String category) {
-        return menu.values().stream().filter(item -> item.category.equalsIgnoreCase(category)).collect(Collectors.toList());
+        long start = System.nanoTime();
+        menuLock.readLock().lock();
+        try {
+            TreeMap<String, FoodItem> items = menuByCategory.get(category.toLowerCase());
+            return items == null ? new ArrayList<>() : new ArrayList<>(items.values());
+        } finally {
+            menuLock.readLock().unlock();
+            metrics.record(CanteenMetrics.Operation.FILTER_MENU, start);
+        }
     }
 
+    // Items with equal prices stay in name order in both directions, as the old stable sort left them.
     public List<FoodItem> sortMenuByPrice(boolean ascending) {
-        return menu.values().stream().sorted(Comparator.comparingDouble(item -> ascending ? item.price : -item.price)).collect(Collectors.toList());
+        long start = System.nanoTime();
+        menuLock.readLock().lock();
+        try {
+            List<FoodItem> sorted = new ArrayList<>(menu.size());
+            (ascending ? menuByPrice : menuByPrice.descendingMap()).values().forEach(items -> sorted.addAll(items.values()));
+            return sorted;
+        } finally {
+            menuLock.readLock().unlock();
+            metrics.record(CanteenMetrics.Operation.SORT_MENU, start);
+        }
+    }
+
+    private void indexMenuItem(String key, FoodItem item) {
+        menuByLowerName.put(key.toLowerCase(), item);
+        searchIndex.add(key, item);
+        if (item.category != null) {
+            menuByCategory.computeIfAbsent(item.category.toLowerCase(), k -> new TreeMap<>()).put(key, item);
+        }
+        indexPrice(key, item);
+    }
+
+    private void unindexMenuItem(String key, FoodItem item) {
+        menuByLowerName.remove(key.toLowerCase(), item);
+        searchIndex.remove(key);
+        if (item.category != null) {
+            String category = item.category.toLowerCase();
+            TreeMap<String, FoodItem> items = menuByCategory.get(category);
+            if (items != null && items.remove(key, item) && items.isEmpty()) {
+                menuByCategory.remove(category);
+            }
+        }
+        unindexPrice(key);
+    }
+
+    private void indexPrice(String key, FoodItem item) {
+        menuByPrice.computeIfAbsent(item.price, k -> new TreeMap<>()).put(key, item);
+        indexedPrices.put(key, item.price);
+    }
+
+    private void unindexPrice(String key) {
+        Double price = indexedPrices.remove(key);
+        if (price != null) {
+            TreeMap<String, FoodItem> items = menuByPrice.get(price);
+            if (items != null && items.remove(key) != null && items.isEmpty()) {
+                menuByPrice.remove(price);
+            }
+        }
     }
 
     public void registerCustomer(String loginId, String password) {
-        customerAccounts.put(loginId, password);
-        System.out.println("Registration successful. You can now log in.");
+        stateLock.readLock().lock();
+        try {
+            customerAccounts.put(loginId, password);
+            if (operationLog != null) {
+                operationLog.registerCustomer(loginId, password);
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        SessionIO.out().println("Registration successful. You can now log in.");
     }
 
+    // Reads the customer's order history in from disk now, if it is still there, so the session
+    // does not wait for it later.
     public boolean loginCustomer(String loginId, String password) {
-        return customerAccounts.containsKey(loginId) && customerAccounts.get(loginId).equals(password);
+        if (!password.equals(customerAccounts.get(loginId))) {
+            return false;
+        }
+        pageInHistory(loginId);
+        return true;
     }
 
-    public void createOrder(String loginId, List<CartItem> cart, String specialRequest, ByteMeCanteenSystem system) {
+    // The order is placed when this returns; its records are written in the background. The future
+    // completes once the order is persisted (its operation log record forced to disk or, without
+    // an operation log, its journal line written), for callers that want to wait for that.
+    public CompletableFuture<Order> createOrder(String loginId, List<CartItem> cart, String specialRequest, ByteMeCanteenSystem system) {
+        long start = System.nanoTime();
+        CanteenEvents.CreateOrder event = new CanteenEvents.CreateOrder();
+        event.begin();
+        Order order = new Order(cart, specialRequest);
+        CompletableFuture<Void> persisted;
+        lockCustomer(loginId);
+        try {
+            List<Order> orders = addOrder(loginId, order);
+            CompletableFuture<Void> logged = operationLog != null ? operationLog.createOrder(order) : null;
+            long journalStart = System.nanoTime();
+            CompletableFuture<Void> journaled = orderJournal().append(loginId, orders);
+            metrics.record(CanteenMetrics.Operation.JOURNAL_APPEND, journalStart);
+            persisted = logged != null ? logged : journaled;
+        } finally {
+            unlockCustomer(loginId);
+        }
+        metrics.record(CanteenMetrics.Operation.CREATE_ORDER, start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.loginId = loginId;
+            event.orderId = order.getId();
+            event.lines = order.getLineCount();
+            event.items = CanteenEvents.itemCount(order);
+            event.amountCents = order.getTotalCents();
+            event.commit();
+        }
+        return persisted.thenApply(written -> order);
+    }
 
+    // Callers other than log replay must hold the customer's lock.
+    List<Order> addOrder(String loginId, Order order) {
+        if (order.id == 0) {
+            order.id = lastOrderId.incrementAndGet();
+        } else {
+            lastOrderId.accumulateAndGet(order.id, Math::max);
+        }
+        order.loginId = loginId;
+        order.owner = this;
+        ordersById.put(order);
+        loadedHistory(loginId);
+        List<Order> orders = orderHistory.computeIfAbsent(loginId, k -> new ArrayList<>());
+        orders.add(order);
+        if (pagedHistory != null) {
+            pagedHistory.pin(loginId);
+        }
+        indexStatus(order);
+        if (!order.status.isReversed()) {
+            salesReport.orderPlaced(order);
+        }
+        popularItems.record(order);
+        return orders;
+    }
 
-        Order order = new Order(cart, specialRequest);
-        orderHistory.computeIfAbsent(loginId, k -> new ArrayList<>()).add(order);
+    boolean changeOrderStatus(Order order, OrderStatus status) {
+        long start = System.nanoTime();
+        CanteenEvents.OrderStatusChange event = new CanteenEvents.OrderStatusChange();
+        event.begin();
+        OrderStatus previousStatus;
+        boolean accepted = false;
+        lockCustomer(order.loginId);
+        try {
+            // An order looked up before its customer's history was dropped from memory is no longer
+            // the system's copy; the change goes to the one read back in.
+            Order current = currentOrder(order);
+            previousStatus = current.status;
+            if (previousStatus.canBecome(status)) {
+                applyOrderStatus(current, status);
+                order.status = status;
+                accepted = true;
+            }
+        } finally {
+            unlockCustomer(order.loginId);
+            metrics.record(CanteenMetrics.Operation.CHANGE_ORDER_STATUS, start);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.loginId = order.loginId;
+            event.orderId = order.getId();
+            event.from = previousStatus.getLabel();
+            event.to = status.getLabel();
+            event.accepted = accepted;
+            event.commit();
+        }
+        return accepted;
+    }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(loginId + ".txt"))) {
-            List<Order> orders = system.getOrderHistory(loginId);
-            if (orders.isEmpty()) {
-                writer.write("No order history found.");
-            } else {
-                writer.write("Your Order History:\n");
-                int orderNumber = 1;
-                for (Order neworder : orders) {
-                    writer.write("Order #" + orderNumber + ": " + neworder + "\n");
-                    orderNumber++;
+    // Log replay applies logged changes as they were made, including ones from before transitions
+    // were checked. Callers other than log replay must hold the customer's lock.
+    void applyOrderStatus(Order order, OrderStatus status) {
+        OrderStatus previousStatus = order.status;
+        order.status = status;
+        if (pagedHistory != null) {
+            pagedHistory.pin(order.loginId);
+        }
+        unindexStatus(order, previousStatus);
+        indexStatus(order);
+        if (status.isReversed() && !previousStatus.isReversed()) {
+            salesReport.orderReversed(order);
+        } else if (!status.isReversed() && previousStatus.isReversed()) {
+            salesReport.orderPlaced(order);
+        }
+        if (operationLog != null) {
+            operationLog.setOrderStatus(order.id, status);
+        }
+    }
+
+    void changeMenuItem(FoodItem item, double price, boolean available) {
+        lockMenu();
+        try {
+            item.price = price;
+            item.available = available;
+            boolean onMenu = menu.get(item.getName()) == item;
+            if (onMenu && !Objects.equals(indexedPrices.get(item.getName()), price)) {
+                unindexPrice(item.getName());
+                indexPrice(item.getName(), item);
+            }
+            if (operationLog != null) {
+                operationLog.updateMenuItem(item);
+            }
+            if (onMenu) {
+                menuListeners.forEach(listener -> listener.itemChanged(item));
+            }
+        } finally {
+            unlockMenu();
+        }
+    }
+
+    // Called once at startup, before any session: reviews still held in memory (from an older
+    // snapshot or byte_me.ser) move into the store and are dropped from the next snapshot.
+    public void setReviewStore(ReviewStore store) {
+        for (FoodItem item : menu.values()) {
+            item.migrateReviews(store);
+        }
+        reviewStore = store;
+    }
+
+    void addReview(FoodItem item, Review review) {
+        stateLock.readLock().lock();
+        try {
+            item.appendReview(review, reviewStore);
+            if (operationLog != null) {
+                operationLog.addReview(item.getName(), review);
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    private void lockMenu() {
+        stateLock.readLock().lock();
+        menuLock.writeLock().lock();
+    }
+
+    private void unlockMenu() {
+        menuLock.writeLock().unlock();
+        stateLock.readLock().unlock();
+    }
+
+    private ReentrantReadWriteLock customerLock(String loginId) {
+        int hash = loginId.hashCode();
+        return customerLocks[(hash ^ (hash >>> 16)) & (CUSTOMER_LOCK_STRIPES - 1)];
+    }
+
+    private void lockCustomer(String loginId) {
+        stateLock.readLock().lock();
+        customerLock(loginId).writeLock().lock();
+    }
+
+    private void unlockCustomer(String loginId) {
+        customerLock(loginId).writeLock().unlock();
+        stateLock.readLock().unlock();
+    }
+
+    private static ReentrantReadWriteLock[] newCustomerLocks() {
+        ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[CUSTOMER_LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        return locks;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("menu", new TreeMap<>(menu));
+        fields.put("customerAccounts", new HashMap<>(customerAccounts));
+        HashMap<String, List<Order>> history = new HashMap<>();
+        orderHistory.forEach((loginId, orders) -> history.put(loginId, new ArrayList<>(orders)));
+        PagedOrderHistory paged = pagedHistory;
+        if (paged != null) {
+            for (Map.Entry<String, PagedOrderHistory.Page> entry : paged.getUnloaded().entrySet()) {
+                history.putIfAbsent(entry.getKey(), CanteenCodec.decodePage(paged.readPage(entry.getValue())));
+            }
+        }
+        fields.put("orderHistory", history);
+        fields.put("logSequence", logSequence);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        menu = new ConcurrentSkipListMap<>((Map<String, FoodItem>) fields.get("menu", new TreeMap<>()));
+        customerAccounts = new ConcurrentHashMap<>((Map<String, String>) fields.get("customerAccounts", new HashMap<>()));
+        orderHistory = new ConcurrentHashMap<>((Map<String, List<Order>>) fields.get("orderHistory", new HashMap<>()));
+        logSequence = fields.get("logSequence", 0L);
+        attach();
+    }
+
+    // Re-links menu items and orders to this system and rebuilds the transient indexes after a load.
+    void attach() {
+        if (stateLock == null) {
+            stateLock = new ReentrantReadWriteLock();
+            menuLock = new ReentrantReadWriteLock();
+            customerLocks = newCustomerLocks();
+            carts = new ConcurrentHashMap<>();
+            salesReport = new SalesReport();
+            metrics = new CanteenMetrics(this);
+            menuListeners = new CopyOnWriteArrayList<>();
+        }
+        salesReport.reset();
+        popularItems = new PopularItemsTracker();
+        menuByLowerName = new ConcurrentHashMap<>();
+        searchIndex = new MenuSearchIndex();
+        menuByCategory = new HashMap<>();
+        menuByPrice = new TreeMap<>();
+        indexedPrices = new HashMap<>();
+        for (Map.Entry<String, FoodItem> entry : menu.entrySet()) {
+            entry.getValue().owner = this;
+            indexMenuItem(entry.getKey(), entry.getValue());
+        }
+        liveOrdersByStatus = new EnumMap<>(OrderStatus.class);
+        statusCounts = new long[OrderStatus.values().length];
+        ordersById = new OrderIndex();
+        lastOrderId = new AtomicLong(pagedHistory == null ? 0 : pagedHistory.getLastOrderId());
+        // Orders saved before ids existed are numbered after the rest, oldest first, in the same
+        // way on every load until a snapshot records their ids.
+        List<Order> unnumbered = new ArrayList<>();
+        for (Map.Entry<String, List<Order>> entry : orderHistory.entrySet()) {
+            for (Order order : entry.getValue()) {
+                order.loginId = entry.getKey();
+                if (order.id == 0) {
+                    unnumbered.add(order);
+                } else {
+                    lastOrderId.accumulateAndGet(order.id, Math::max);
                 }
             }
-        } catch (IOException e) {
-            System.err.println("Error writing to file: " + e.getMessage());
         }
+        unnumbered.sort(Comparator.comparingLong((Order order) -> order.placedAt).thenComparing(order -> order.loginId));
+        for (Order order : unnumbered) {
+            order.id = lastOrderId.incrementAndGet();
+        }
+        for (Map.Entry<String, List<Order>> entry : orderHistory.entrySet()) {
+            for (Order order : entry.getValue()) {
+                order.owner = this;
+                ordersById.put(order);
+                indexStatus(order);
+                if (!order.status.isReversed()) {
+                    salesReport.orderPlaced(order);
+                }
+                popularItems.record(order);
+            }
+        }
+        if (pagedHistory != null) {
+            // Includes the orders still on disk, which the snapshot counted for us.
+            statusCounts = pagedHistory.getStatusCounts();
+        }
+    }
 
+    // Only orders that can still change are indexed, so the index stays as small as the kitchen queue.
+    private void indexStatus(Order order) {
+        synchronized (liveOrdersByStatus) {
+            statusCounts[order.status.ordinal()]++;
+            if (!order.status.isTerminal()) {
+                liveOrdersByStatus.computeIfAbsent(order.status, k -> new LinkedHashSet<>()).add(order);
+            }
+        }
+    }
+
+    private void unindexStatus(Order order, OrderStatus status) {
+        synchronized (liveOrdersByStatus) {
+            statusCounts[status.ordinal()]--;
+            Set<Order> orders = liveOrdersByStatus.get(status);
+            if (orders != null && orders.remove(order) && orders.isEmpty()) {
+                liveOrdersByStatus.remove(status);
+            }
+        }
+    }
 
+    OrderJournal orderJournal() {
+        if (orderJournal == null) {
+            synchronized (this) {
+                if (orderJournal == null) {
+                    orderJournal = new OrderJournal(new File("."));
+                }
+            }
+        }
+        return orderJournal;
     }
 
+    // Closes the snapshot that histories not yet read in come from. Only for a system that is done
+    // with: its remaining pages can no longer be read, nor saved into another snapshot.
+    void closePagedHistory() {
+        PagedOrderHistory paged = pagedHistory;
+        if (paged != null) {
+            try {
+                paged.close();
+            } catch (IOException e) {
+                System.err.println("Error closing order history: " + e.getMessage());
+            }
+        }
+    }
+
+    // Writes any journal lines still queued.
+    void closeOrderJournal() {
+        OrderJournal journal = orderJournal;
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    public Cart getCart(String loginId) {
+        return carts.computeIfAbsent(loginId, k -> new Cart());
+    }
+
+    // Returns a copy, so callers can iterate while other threads place orders for the same customer.
     public List<Order> getOrderHistory(String loginId) {
-        return orderHistory.getOrDefault(loginId, new ArrayList<>());
+        ReentrantReadWriteLock lock = customerLock(loginId);
+        stateLock.readLock().lock();
+        lock.readLock().lock();
+        try {
+            List<Order> orders = loadedHistory(loginId);
+            return orders == null ? new ArrayList<>() : new ArrayList<>(orders);
+        } finally {
+            lock.readLock().unlock();
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // The customer's orders, read in first if they are still on disk; null if they have none.
+    // Callers hold stateLock's read lock and the customer's lock, or are replaying the log.
+    List<Order> loadedHistory(String loginId) {
+        PagedOrderHistory paged = pagedHistory;
+        if (paged == null) {
+            return orderHistory.get(loginId);
+        }
+        List<Order> orders = orderHistory.get(loginId);
+        if (orders != null) {
+            paged.touch(loginId);
+            return orders;
+        }
+        // Readers of one customer share the read lock, so the page-in itself is serialized by
+        // the page's own lock; the page is read outside the map, which is only updated once the
+        // orders are indexed.
+        ReentrantLock pageIn = paged.pageInLock(loginId);
+        pageIn.lock();
+        try {
+            orders = orderHistory.get(loginId);
+            if (orders == null) {
+                orders = paged.read(loginId);
+                if (orders == null) {
+                    return null;
+                }
+                for (Order order : orders) {
+                    order.loginId = loginId;
+                    order.owner = this;
+                    ordersById.put(order);
+                }
+                orderHistory.putIfAbsent(loginId, orders);
+            }
+        } finally {
+            pageIn.unlock();
+        }
+        if (paged.isOverCapacity()) {
+            evictHistories(paged, loginId);
+        }
+        return orders;
+    }
+
+    private void pageInHistory(String loginId) {
+        if (pagedHistory == null) {
+            return;
+        }
+        ReentrantReadWriteLock lock = customerLock(loginId);
+        stateLock.readLock().lock();
+        lock.readLock().lock();
+        try {
+            loadedHistory(loginId);
+        } finally {
+            lock.readLock().unlock();
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // Drops least recently used histories read in from disk until the rest fit. A customer whose
+    // lock someone else holds is skipped, as is the one being read in; they go on a later round.
+    private void evictHistories(PagedOrderHistory paged, String reading) {
+        for (String loginId : paged.getEvictionCandidates()) {
+            ReentrantReadWriteLock lock = customerLock(loginId);
+            if (loginId.equals(reading) || !lock.writeLock().tryLock()) {
+                continue;
+            }
+            try {
+                List<Order> orders = orderHistory.get(loginId);
+                if (orders != null && paged.evict(loginId)) {
+                    orderHistory.remove(loginId);
+                    for (Order order : orders) {
+                        ordersById.remove(order);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // The system's own copy of the order. Callers hold the customer's lock.
+    private Order currentOrder(Order order) {
+        if (pagedHistory == null) {
+            return order;
+        }
+        loadedHistory(order.loginId);
+        Order current = ordersById.get(order.id);
+        return current != null ? current : order;
     }
 
     public void leaveReview(Scanner scanner, String itemName) {
-        FoodItem item = menu.get(itemName);
+        FoodItem item = getMenuItem(itemName);
         if (item == null) {
-            System.out.println("Item not found in menu.");
+            SessionIO.out().println("Item not found in menu.");
             return;
         }
 
-        System.out.print("Enter your name: ");
+        SessionIO.out().print("Enter your name: ");
         String customerName = scanner.nextLine();
 
-        System.out.print("Enter your review: ");
+        SessionIO.out().print("Enter your review: ");
         String reviewText = scanner.nextLine();
 
-        System.out.print("Enter your rating (1-5): ");
+        SessionIO.out().print("Enter your rating (1-5): ");
         int rating = scanner.nextInt();
         scanner.nextLine();
+        if (rating < 1 || rating > 5) {
+            SessionIO.out().println("Rating must be between 1 and 5.");
+            return;
+        }
         Review review = new Review(customerName, reviewText, rating);
         item.addReview(review);
-        System.out.println("Thank you for your review!");
+        SessionIO.out().println("Thank you for your review!");
     }
 
 
-    public void viewReviews(String itemName) {
-        FoodItem item = menu.get(itemName);
+    public void viewReviews(Scanner scanner, String itemName) {
+        FoodItem item = getMenuItem(itemName);
         if (item == null) {
-            System.out.println("Item not found in menu.");
+            SessionIO.out().println("Item not found in menu.");
             return;
         }
 
-        List<Review> reviews = item.getReviews();
-        if (reviews.isEmpty()) {
-            System.out.println("No reviews yet for this item.");
-        } else {
-            System.out.println("Reviews for " + item.getName() + ":");
-            for (Review review : reviews) {
-                System.out.println(review);
+        int count = item.getReviewCount();
+        if (count == 0) {
+            SessionIO.out().println("No reviews yet for this item.");
+            return;
+        }
+        SessionIO.out().printf("Reviews for %s: %.1f/5 from %d review%s%n", item.getName(), item.getAverageRating(), count, count == 1 ? "" : "s");
+        int[] histogram = item.getRatingHistogram();
+        for (int rating = 5; rating >= 1; rating--) {
+            SessionIO.out().println("  " + rating + " stars: " + histogram[rating - 1]);
+        }
+        ReviewPage page = item.getReviews(count, REVIEW_PAGE_SIZE);
+        while (true) {
+            for (Review review : page.reviews) {
+                SessionIO.out().println(review);
+            }
+            if (!page.hasMore()) {
+                break;
+            }
+            SessionIO.out().print("Show older reviews? (y/n): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                break;
             }
+            page = item.getReviews(page.nextCursor, REVIEW_PAGE_SIZE);
         }
     }
 
 
+    public Order getOrder(long id) {
+        Order order = ordersById.get(id);
+        PagedOrderHistory paged = pagedHistory;
+        if (order == null && paged != null) {
+            String loginId = paged.ownerOf(id);
+            if (loginId != null) {
+                pageInHistory(loginId);
+                order = ordersById.get(id);
+            }
+        }
+        return order;
+    }
+
+    // The customer's own order with this id, or null.
+    public Order getOrder(String loginId, long id) {
+        Order order = getOrder(id);
+        return order != null && loginId.equals(order.loginId) ? order : null;
+    }
+
     public List<Order> getPendingOrders() {
-        List<Order> pendingOrders = new ArrayList<>();
-        for (List<Order> orders : orderHistory.values()) {
-            pendingOrders.addAll(orders.stream().filter(o -> o.getStatus().equals("Pending")).collect(Collectors.toList()));
+        long start = System.nanoTime();
+        List<Order> pending = getLiveOrders(OrderStatus.PENDING);
+        metrics.record(CanteenMetrics.Operation.PENDING_ORDERS, start);
+        return pending;
+    }
+
+    public long getOrderCount(OrderStatus status) {
+        synchronized (liveOrdersByStatus) {
+            return statusCounts[status.ordinal()];
+        }
+    }
+
+    // Orders in each status, by ordinal.
+    long[] getOrderCounts() {
+        synchronized (liveOrdersByStatus) {
+            return statusCounts.clone();
+        }
+    }
+
+    public List<Order> getLiveOrders(OrderStatus status) {
+        synchronized (liveOrdersByStatus) {
+            Set<Order> orders = liveOrdersByStatus.get(status);
+            return orders == null ? new ArrayList<>() : new ArrayList<>(orders);
         }
-        return pendingOrders;
     }
 
     public void updateOrderStatus(Scanner scanner, Order order) {
-        System.out.println("Current order status: " + order.getStatus());
-        System.out.print("Enter new status (Preparing, Out for Delivery, Completed): ");
-        String newStatus = scanner.nextLine();
-        order.setStatus(newStatus);
-        System.out.println("Order status updated to: " + newStatus);
+        OrderStatus currentStatus = order.getStatus();
+        SessionIO.out().println("Current order status: " + currentStatus);
+        String nextStatuses = currentStatus.describeNext();
+        if (nextStatuses.isEmpty()) {
+            SessionIO.out().println("This order can no longer be updated.");
+            return;
+        }
+        SessionIO.out().print("Enter new status (" + nextStatuses + "): ");
+        String input = scanner.nextLine();
+        OrderStatus newStatus = OrderStatus.parse(input);
+        if (newStatus == null) {
+            SessionIO.out().println("Unknown status: " + input);
+        } else if (order.setStatus(newStatus)) {
+            SessionIO.out().println("Order status updated to: " + newStatus);
+        } else {
+            SessionIO.out().println("An order that is " + order.getStatus() + " cannot become " + newStatus + ".");
+        }
     }
 
     public void processRefund(Scanner scanner, Order order) {
-        System.out.println("Refund request for order: " + order);
-        System.out.print("Enter the reason for the refund: ");
+        if (order.getStatus() == OrderStatus.REFUNDED) {
+            SessionIO.out().println("Order #" + order.getId() + " has already been refunded.");
+            return;
+        }
+        SessionIO.out().println("Refund request for order: " + order);
+        SessionIO.out().print("Enter the reason for the refund: ");
         String reason = scanner.nextLine();
-        System.out.println("Refund processed. Reason: " + reason);
+        CanteenEvents.Refund event = new CanteenEvents.Refund();
+        event.begin();
+        boolean refunded = order.setStatus(OrderStatus.REFUNDED);
+        event.end();
+        if (event.shouldCommit()) {
+            event.loginId = order.loginId;
+            event.orderId = order.getId();
+            event.amountCents = order.getTotalCents();
+            event.reason = reason;
+            event.refunded = refunded;
+            event.commit();
+        }
+        if (refunded) {
+            SessionIO.out().println("Refund processed. Reason: " + reason);
+        } else {
+            SessionIO.out().println("Order #" + order.getId() + " has already been refunded.");
+        }
+    }
+
+    public void printDailySalesReport() {
+        SessionIO.out().println("Daily Sales Report for " + salesReport.getDay() + ":");
+        SessionIO.out().printf("Total sales: $%.2f%n", salesReport.getTotalSalesCents() / 100.0);
+        SessionIO.out().println("Number of orders: " + salesReport.getOrderCount());
+        List<Map.Entry<String, Long>> popular = salesReport.getMostPopularItems(5);
+        if (popular.isEmpty()) {
+            SessionIO.out().println("No items sold yet today.");
+        } else {
+            SessionIO.out().println("Most popular items:");
+            for (Map.Entry<String, Long> entry : popular) {
+                SessionIO.out().println("  " + entry.getKey() + " - " + entry.getValue() + " sold");
+            }
+        }
+    }
+
+    public void printPopularItems() {
+        printPopularItems("last 15 minutes", 15);
+        printPopularItems("last hour", 60);
+        printPopularItems("last day", PopularItemsTracker.DAY_MINUTES);
+    }
+
+    private void printPopularItems(String label, int windowMinutes) {
+        List<Map.Entry<String, Long>> popular = popularItems.topItems(windowMinutes, 5);
+        SessionIO.out().println("Popular items (" + label + "):");
+        if (popular.isEmpty()) {
+            SessionIO.out().println("  No orders yet.");
+        }
+        for (Map.Entry<String, Long> entry : popular) {
+            SessionIO.out().println("  " + entry.getKey() + " - " + entry.getValue() + " ordered");
+        }
     }
 }
 
 class MyFrame extends JFrame {
     private JTable table;
     private DefaultTableModel tableModel;
+    private final OrderHistoryTableModel historyModel = new OrderHistoryTableModel();
+    private transient SwingWorker<Void, List<Order>> historyLoader;
+    private final MenuTableModel menuModel;
+    private final transient TableRowSorter<MenuTableModel> menuSorter;
+    private final JTextField menuFilter = new JTextField(10);
     public MyFrame(ByteMeCanteenSystem system, Scanner scanner, String loginId) {
         // Set the title of the frame
         setTitle("My Swing Frame");
@@ -330,6 +1445,8 @@ class MyFrame extends JFrame {
 
         tableModel = new DefaultTableModel(new Object[]{""}, 0);
         table = new JTable(tableModel);
+        menuModel = new MenuTableModel(system);
+        menuSorter = new TableRowSorter<>(menuModel);
 
         JScrollPane scrollPane = new JScrollPane(table);
         add(scrollPane, BorderLayout.CENTER);
@@ -337,29 +1454,112 @@ class MyFrame extends JFrame {
         JPanel buttonPanel = new JPanel();
         buttonPanel.setLayout(new FlowLayout(FlowLayout.RIGHT));
 
+        buttonPanel.add(new JLabel("Filter:"));
+        buttonPanel.add(menuFilter);
+
         JButton button = new JButton("Menu");
         buttonPanel.add(button);
 
         JButton anotherButton = new JButton("Order History");
         buttonPanel.add(anotherButton);
 
+        JButton popularButton = new JButton("Popular");
+        buttonPanel.add(popularButton);
+
         add(buttonPanel, BorderLayout.SOUTH);
 
         button.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                system.guidisplayAllItems(tableModel);
+                showTable(menuModel, menuSorter);
+
+            }
+        });
+
+        menuFilter.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                filterMenu();
+            }
 
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                filterMenu();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                filterMenu();
             }
         });
 
         anotherButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                system.orderhistory(tableModel, scanner, system, loginId);
+                loadOrderHistory(system, loginId);
 
             }
         });
+
+        popularButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showTable(tableModel, null);
+                system.guidisplayPopularItems(tableModel);
+
+            }
+        });
+    }
+
+    @Override
+    public void dispose() {
+        menuModel.close();
+        super.dispose();
+    }
+
+    // A sorter belongs to one model, so it is detached before the table switches models.
+    private void showTable(TableModel model, RowSorter<? extends TableModel> sorter) {
+        table.setRowSorter(null);
+        table.setModel(model);
+        table.setRowSorter(sorter);
+    }
+
+    // Shows menu items whose name or category contains the filter text, ignoring case.
+    private void filterMenu() {
+        String text = menuFilter.getText().trim();
+        menuSorter.setRowFilter(text.isEmpty() ? null : RowFilter.regexFilter("(?i)" + Pattern.quote(text), 0, 1));
+    }
+
+    // Shows the history table at once and fills it a page at a time from a background thread, so a
+    // long history never holds up the event dispatch thread. Clicking again starts a fresh load.
+    private void loadOrderHistory(ByteMeCanteenSystem system, String loginId) {
+        if (historyLoader != null) {
+            historyLoader.cancel(false);
+        }
+        historyModel.clear();
+        showTable(historyModel, null);
+        historyLoader = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() {
+                List<Order> orders = system.getOrderHistory(loginId);
+                for (int from = 0; from < orders.size() && !isCancelled(); from += OrderHistoryTableModel.PAGE_SIZE) {
+                    publish(orders.subList(from, Math.min(orders.size(), from + OrderHistoryTableModel.PAGE_SIZE)));
+                }
+                return null;
+            }
+
+            @Override
+            protected void process(List<List<Order>> pages) {
+                // Pages from a load that has since been replaced are dropped.
+                if (isCancelled()) {
+                    return;
+                }
+                for (List<Order> page : pages) {
+                    historyModel.addOrders(page);
+                }
+            }
+        };
+        historyLoader.execute();
     }
 }
 
@@ -367,8 +1567,11 @@ class MyFrame extends JFrame {
 public class ByteMe {
     private static final String ADMIN_ID = "admin";
     private static final String ADMIN_PASSWORD = "admin123";
-    private static final String SYSTEM_SAVE_FILE = "byte_me.ser";
-    private static final String CART_SAVE_FILE = "byte_me_cart.ser";
+    private static final String SYSTEM_SAVE_FILE = "byte_me.bin";
+    private static final String CART_SAVE_FILE = "byte_me_cart.bin";
+    private static final String LEGACY_SYSTEM_SAVE_FILE = "byte_me.ser";
+    private static final String LEGACY_CART_SAVE_FILE = "byte_me_cart.ser";
+    private static final String REVIEW_DIRECTORY = "reviews";
     static HashMap<String, String> customerAccounts;
     static {
         customerAccounts = new HashMap<>();
@@ -379,162 +1582,242 @@ public class ByteMe {
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
 
-        File byteMeCanteenSystemfile = new File(SYSTEM_SAVE_FILE);
+        convertLegacyData(LEGACY_SYSTEM_SAVE_FILE, SYSTEM_SAVE_FILE);
+        convertLegacyData(LEGACY_CART_SAVE_FILE, CART_SAVE_FILE);
         File cartFile = new File(CART_SAVE_FILE);
 
+        OperationLog operationLog = new OperationLog(new File(SYSTEM_SAVE_FILE));
         ByteMeCanteenSystem system;
-        List<CartItem> cart;
-        if(byteMeCanteenSystemfile.exists() && cartFile.exists()){
-            system = loadByteMeSystemData();
-            cart = loadCartData();
+        try {
+            system = operationLog.recover();
+            if (operationLog.getReplayed() > 0) {
+                SessionIO.out().println("Recovered " + operationLog.getReplayed() + " logged operations.");
+            }
+        } catch (IOException e) {
+            SessionIO.out().println("Error loading data: " + e.getMessage());
+            return;
         }
-        else{
-            system = new ByteMeCanteenSystem();
-            cart = new ArrayList<>();
+        system.setReviewStore(new ReviewStore(new File(REVIEW_DIRECTORY)));
+        system.metrics.register();
+        if (cartFile.exists()) {
+            Map<String, Cart> carts = loadCartData();
+            if (carts != null) {
+                system.carts.putAll(carts);
+            }
+        }
+
+
+
+        if (args.length > 0 && args[0].equals("--server")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : CanteenServer.DEFAULT_PORT;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    operationLog.close();
+                } catch (IOException e) {
+                    SessionIO.out().println("Error saving data: " + e.getMessage());
+                }
+                system.closeOrderJournal();
+                saveCartData(system.carts);
+            }));
+            try {
+                new CanteenServer(system, port).serve();
+            } catch (IOException e) {
+                SessionIO.out().println("Server stopped: " + e.getMessage());
+            }
+            return;
         }
 
+        runSession(scanner, system);
+
+        try {
+            operationLog.close();
+        } catch (IOException e) {
+            SessionIO.out().println("Error saving data: " + e.getMessage());
+        }
+        system.closeOrderJournal();
+        saveCartData(system.carts);
+    }
 
 
+    // The top-level Customer/Admin/Exit loop, shared by the console and every server connection.
+    public static void runSession(Scanner scanner, ByteMeCanteenSystem system) {
         while (true) {
-            System.out.println("Welcome to Byte Me! Please select an option:");
-            System.out.println("1. Customer");
-            System.out.println("2. Admin");
-            System.out.println("3. Exit");
+            SessionIO.out().println("Welcome to Byte Me! Please select an option:");
+            SessionIO.out().println("1. Customer");
+            SessionIO.out().println("2. Admin");
+            SessionIO.out().println("3. Exit");
             int dchoice = scanner.nextInt();
             scanner.nextLine();
 
             if (dchoice == 1) {
-                customerMenu(scanner, system, cart);
+                customerMenu(scanner, system);
             } else if (dchoice == 2) {
                 adminLogin(scanner, system);
             } else if (dchoice == 3) {
-                System.out.println("Exiting the system...");
+                SessionIO.out().println("Exiting the system...");
                 break;
             } else {
-                System.out.println("Invalid choice. Please try again.");
+                SessionIO.out().println("Invalid choice. Please try again.");
             }
         }
-
-        saveByteMeSystemData(system);
-        saveCartData(cart);
     }
 
-
     public static ByteMeCanteenSystem loadByteMeSystemData(){
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(SYSTEM_SAVE_FILE))) {
-            return (ByteMeCanteenSystem)in.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            System.out.println("Error loading data: " + e.getMessage());
+        try {
+            long start = System.nanoTime();
+            ByteMeCanteenSystem system = CanteenCodec.load(new File(SYSTEM_SAVE_FILE));
+            system.metrics.record(CanteenMetrics.Operation.LOAD, start);
+            return system;
+        } catch (IOException e) {
+            SessionIO.out().println("Error loading data: " + e.getMessage());
         }
         return null;
     }
 
     public static void saveByteMeSystemData(ByteMeCanteenSystem system){
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(SYSTEM_SAVE_FILE))) {
-            out.writeObject(system);
+        try {
+            long start = System.nanoTime();
+            CanteenEvents.PersistenceFlush event = new CanteenEvents.PersistenceFlush();
+            event.begin();
+            File file = new File(SYSTEM_SAVE_FILE);
+            CanteenCodec.save(system, file);
+            system.metrics.record(CanteenMetrics.Operation.SAVE, start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = "save";
+                event.path = file.getPath();
+                event.bytes = file.length();
+                event.commit();
+            }
         } catch (IOException e) {
-            System.out.println("Error saving data: " + e.getMessage());
+            SessionIO.out().println("Error saving data: " + e.getMessage());
         }
     }
 
-    public static List<CartItem> loadCartData(){
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(CART_SAVE_FILE))) {
-            return (List<CartItem>) in.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            System.out.println("Error loading data: " + e.getMessage());
+    public static Map<String, Cart> loadCartData(){
+        try {
+            return CanteenCodec.decodeCarts(Files.readAllBytes(Path.of(CART_SAVE_FILE)));
+        } catch (IOException e) {
+            SessionIO.out().println("Error loading data: " + e.getMessage());
         }
         return null;
     }
 
-    public static void saveCartData(List<CartItem> cart){
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(CART_SAVE_FILE))) {
-            out.writeObject(cart);
+    public static void saveCartData(Map<String, Cart> carts){
+        try {
+            CanteenEvents.PersistenceFlush event = new CanteenEvents.PersistenceFlush();
+            event.begin();
+            byte[] bytes = CanteenCodec.encodeCarts(carts);
+            Files.write(Path.of(CART_SAVE_FILE), bytes);
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = "saveCarts";
+                event.path = CART_SAVE_FILE;
+                event.bytes = bytes.length;
+                event.commit();
+            }
         } catch (IOException e) {
-            System.out.println("Error saving data: " + e.getMessage());
+            SessionIO.out().println("Error saving data: " + e.getMessage());
+        }
+    }
+
+    // One-time migration of the ObjectOutputStream files written by earlier versions.
+    private static void convertLegacyData(String legacyFile, String saveFile) {
+        File legacy = new File(legacyFile);
+        if (!legacy.exists() || new File(saveFile).exists()) {
+            return;
+        }
+        try {
+            CanteenCodec.convert(legacy, new File(saveFile), new ReviewStore(new File(REVIEW_DIRECTORY)));
+            SessionIO.out().println("Converted " + legacyFile + " to " + saveFile + ".");
+        } catch (IOException e) {
+            SessionIO.out().println("Error converting data: " + e.getMessage());
         }
     }
 
     public static void menuManagement(Scanner scanner, ByteMeCanteenSystem system) {
         while (true) {
-            System.out.println("\nMenu Management Options:");
-            System.out.println("1. Add New Item");
-            System.out.println("2. Update Existing Item");
-            System.out.println("3. Remove Item");
-            System.out.println("4. Order Management");
-            System.out.println("5. Go Back");
+            SessionIO.out().println("\nMenu Management Options:");
+            SessionIO.out().println("1. Add New Item");
+            SessionIO.out().println("2. Update Existing Item");
+            SessionIO.out().println("3. Remove Item");
+            SessionIO.out().println("4. Order Management");
+            SessionIO.out().println("5. Go Back");
             int choice = scanner.nextInt();
             scanner.nextLine();
 
             if (choice == 1) {
 
-                System.out.print("Enter item name: ");
+                SessionIO.out().print("Enter item name: ");
                 String name = scanner.nextLine();
-                System.out.print("Enter item price: ");
+                SessionIO.out().print("Enter item price: ");
                 double price = scanner.nextDouble();
                 scanner.nextLine();
-                System.out.print("Enter item category (Snacks/Beverages/Meals): ");
+                SessionIO.out().print("Enter item category (Snacks/Beverages/Meals): ");
                 String category = scanner.nextLine();
-                System.out.print("Is the item available? (true/false): ");
+                SessionIO.out().print("Is the item available? (true/false): ");
                 boolean available = scanner.nextBoolean();
                 scanner.nextLine();
 
                 FoodItem newItem = new FoodItem(name, price, category, available);
                 system.addMenuItem(newItem);
-                System.out.println(name + " has been added to the menu.");
+                SessionIO.out().println(name + " has been added to the menu.");
 
             } else if (choice == 2) {
 
-                System.out.print("Enter the name of the item to update: ");
+                SessionIO.out().print("Enter the name of the item to update: ");
                 String itemName = scanner.nextLine();
                 FoodItem itemToUpdate = system.getMenuItem(itemName);
                 if (itemToUpdate != null) {
-                    System.out.print("Enter new price (or press Enter to keep current): ");
+                    SessionIO.out().print("Enter new price (or press Enter to keep current): ");
                     String priceInput = scanner.nextLine();
                     if (!priceInput.isEmpty()) {
                         double newPrice = Double.parseDouble(priceInput);
                         itemToUpdate.setPrice(newPrice);
                     }
 
-                    System.out.print("Is the item available? (true/false, or press Enter to keep current): ");
+                    SessionIO.out().print("Is the item available? (true/false, or press Enter to keep current): ");
                     String availableInput = scanner.nextLine();
                     if (!availableInput.isEmpty()) {
                         boolean newAvailability = Boolean.parseBoolean(availableInput);
                         itemToUpdate.setAvailable(newAvailability);
                     }
 
-                    System.out.println(itemName + " has been updated.");
+                    SessionIO.out().println(itemName + " has been updated.");
                 } else {
-                    System.out.println("Item not found.");
+                    SessionIO.out().println("Item not found.");
                 }
 
             } else if (choice == 3) {
 
-                System.out.print("Enter the name of the item to remove: ");
+                SessionIO.out().print("Enter the name of the item to remove: ");
                 String itemName = scanner.nextLine();
                 if (system.removeMenuItem(itemName)) {
-                    System.out.println(itemName + " has been removed from the menu.");
+                    SessionIO.out().println(itemName + " has been removed from the menu.");
                 } else {
-                    System.out.println("Item not found.");
+                    SessionIO.out().println("Item not found.");
                 }
 
             } else if (choice == 4) {
                 orderManagement(scanner, system);
             } else if (choice == 5) {
-                System.out.println("Returning to Admin Menu...");
+                SessionIO.out().println("Returning to Admin Menu...");
                 break;
             } else {
-                System.out.println("Invalid choice. Please try again.");
+                SessionIO.out().println("Invalid choice. Please try again.");
             }
         }
     }
 
     private static void orderManagement(Scanner scanner, ByteMeCanteenSystem system) {
         while (true) {
-            System.out.println("\nOrder Management Options:");
-            System.out.println("1. View Pending Orders");
-            System.out.println("2. Update Order Status");
-            System.out.println("3. Process Refund");
-            System.out.println("4. Go Back");
+            SessionIO.out().println("\nOrder Management Options:");
+            SessionIO.out().println("1. View Pending Orders");
+            SessionIO.out().println("2. Update Order Status");
+            SessionIO.out().println("3. Process Refund");
+            SessionIO.out().println("4. Daily Sales Report");
+            SessionIO.out().println("5. Popular Items");
+            SessionIO.out().println("6. Go Back");
             int choice = scanner.nextInt();
             scanner.nextLine();
 
@@ -542,96 +1825,94 @@ public class ByteMe {
 
                 List<Order> pendingOrders = system.getPendingOrders();
                 if (pendingOrders.isEmpty()) {
-                    System.out.println("No pending orders.");
+                    SessionIO.out().println("No pending orders.");
                 } else {
-                    System.out.println("Pending Orders:");
-                    for (int i = 0; i < pendingOrders.size(); i++) {
-                        System.out.println("Order #" + (i + 1) + ": " + pendingOrders.get(i));
+                    SessionIO.out().println("Pending Orders:");
+                    for (Order order : pendingOrders) {
+                        SessionIO.out().println("Order #" + order.getId() + ": " + order);
                     }
+                    SessionIO.out().println("In the kitchen: " + system.getOrderCount(OrderStatus.PREPARING) + " preparing, "
+                            + system.getOrderCount(OrderStatus.OUT_FOR_DELIVERY) + " out for delivery.");
                 }
             } else if (choice == 2) {
 
-                List<Order> pendingOrders = system.getPendingOrders();
-                if (pendingOrders.isEmpty()) {
-                    System.out.println("No pending orders.");
+                SessionIO.out().print("Enter the order number you wish to update: ");
+                long orderId = scanner.nextLong();
+                scanner.nextLine();
+                Order orderToUpdate = system.getOrder(orderId);
+                if (orderToUpdate != null) {
+                    system.updateOrderStatus(scanner, orderToUpdate);
                 } else {
-                    System.out.print("Enter the order number you wish to update (e.g., 1, 2): ");
-                    int orderNumber = scanner.nextInt();
-                    scanner.nextLine();
-                    if (orderNumber > 0 && orderNumber <= pendingOrders.size()) {
-                        Order orderToUpdate = pendingOrders.get(orderNumber - 1);
-                        system.updateOrderStatus(scanner, orderToUpdate);
-                    } else {
-                        System.out.println("Invalid order number.");
-                    }
+                    SessionIO.out().println("Invalid order number.");
                 }
             } else if (choice == 3) {
 
-                List<Order> allOrders = new ArrayList<>();
-                for (List<Order> orders : system.orderHistory.values()) {
-                    allOrders.addAll(orders);
-                }
-                if (allOrders.isEmpty()) {
-                    System.out.println("No orders to process refunds for.");
+                SessionIO.out().print("Enter the order number you wish to process a refund for: ");
+                long orderId = scanner.nextLong();
+                scanner.nextLine();
+                Order orderForRefund = system.getOrder(orderId);
+                if (orderForRefund != null) {
+                    system.processRefund(scanner, orderForRefund);
                 } else {
-                    System.out.print("Enter the order number you wish to process a refund for (e.g., 1, 2): ");
-                    int orderNumber = scanner.nextInt();
-                    scanner.nextLine();
-                    if (orderNumber > 0 && orderNumber <= allOrders.size()) {
-                        Order orderForRefund = allOrders.get(orderNumber - 1);
-                        system.processRefund(scanner, orderForRefund);
-                    } else {
-                        System.out.println("Invalid order number.");
-                    }
+                    SessionIO.out().println("Invalid order number.");
                 }
             } else if (choice == 4) {
-                System.out.println("Returning to Admin Menu...");
+                system.printDailySalesReport();
+            } else if (choice == 5) {
+                system.printPopularItems();
+            } else if (choice == 6) {
+                SessionIO.out().println("Returning to Admin Menu...");
                 break;
             } else {
-                System.out.println("Invalid choice. Please try again.");
+                SessionIO.out().println("Invalid choice. Please try again.");
             }
         }
     }
 
 
-    public static String customerMenu(Scanner scanner, ByteMeCanteenSystem system, List<CartItem> cart) {
+    public static String customerMenu(Scanner scanner, ByteMeCanteenSystem system) {
         boolean exitLoop = false;
         while (true) {
-            System.out.println("\nCustomer Menu:");
-            System.out.println("1. Register");
-            System.out.println("2. Login");
-            System.out.println("3. Back to Main Menu");
+            SessionIO.out().println("\nCustomer Menu:");
+            SessionIO.out().println("1. Register");
+            SessionIO.out().println("2. Login");
+            SessionIO.out().println("3. Back to Main Menu");
             int choice = scanner.nextInt();
             scanner.nextLine();
 
             if (choice == 1) {
-                System.out.print("Enter login ID: ");
+                SessionIO.out().print("Enter login ID: ");
                 String loginId = scanner.nextLine();
-                System.out.print("Enter password: ");
+                SessionIO.out().print("Enter password: ");
                 String password = scanner.nextLine();
                 system.registerCustomer(loginId, password);
             } else if (choice == 2) {
-                System.out.print("Enter login ID: ");
+                SessionIO.out().print("Enter login ID: ");
                 String loginId = scanner.nextLine();
-                System.out.print("Enter password: ");
+                SessionIO.out().print("Enter password: ");
                 String password = scanner.nextLine();
                 if (system.loginCustomer(loginId, password)) {
                     while (true) {
                         // Display menu
-                        System.out.println("Choose an option:");
-                        System.out.println("1. Continue in CLI");
-                        System.out.println("2. Switch to GUI");
-                        System.out.println("3. Go back");
-                        System.out.println("4. Exit");
-                        System.out.println("5. JunitTesting");
-                        System.out.print("Enter your choice: ");
+                        SessionIO.out().println("Choose an option:");
+                        SessionIO.out().println("1. Continue in CLI");
+                        SessionIO.out().println("2. Switch to GUI");
+                        SessionIO.out().println("3. Go back");
+                        SessionIO.out().println("4. Exit");
+                        SessionIO.out().println("5. JunitTesting");
+                        SessionIO.out().print("Enter your choice: ");
                         int lchoice = scanner.nextInt();
 
                         switch (lchoice) {
                             case 1:
-                                System.out.println("\nLogin successful!");
-                                loggedInCustomerMenu(scanner, system, cart, loginId);
+                                SessionIO.out().println("\nLogin successful!");
+                                loggedInCustomerMenu(scanner, system, loginId);
+                                break;
                             case 2:
+                                if (SessionIO.isRemote() || GraphicsEnvironment.isHeadless()) {
+                                    SessionIO.out().println("The GUI is not available in this session.");
+                                    break;
+                                }
                                 SwingUtilities.invokeLater(() -> {
                                     MyFrame frame = new MyFrame(system, scanner, loginId);
                                     frame.setVisible(true); // Make the frame visible
@@ -641,12 +1922,12 @@ public class ByteMe {
                                 exitLoop = true;
                                 break;
                             case 4:
-                                System.out.println("Exiting... Goodbye!");
+                                SessionIO.out().println("Exiting... Goodbye!");
                                 break;
                             case 5:
                                 return("\nLogin successful!");
                             default:
-                                System.out.println("Invalid choice. Please try again.");
+                                SessionIO.out().println("Invalid choice. Please try again.");
                         }
 
                         if (exitLoop){
@@ -656,61 +1937,61 @@ public class ByteMe {
 
 
                 } else {
-                    System.out.println("Invalid login credentials.");
+                    SessionIO.out().println("Invalid login credentials.");
                     return("Invalid login credentials.");
                 }
             } else if (choice == 3) {
                 break;
             } else {
-                System.out.println("Invalid choice. Please try again.");
+                SessionIO.out().println("Invalid choice. Please try again.");
             }
         }
     return("Trash");
     }
 
     private static void adminLogin(Scanner scanner, ByteMeCanteenSystem system) {
-        System.out.print("Enter admin ID: ");
+        SessionIO.out().print("Enter admin ID: ");
         String adminId = scanner.nextLine();
-        System.out.print("Enter admin password: ");
+        SessionIO.out().print("Enter admin password: ");
         String adminPassword = scanner.nextLine();
         if (adminId.equals(ADMIN_ID) && adminPassword.equals(ADMIN_PASSWORD)) {
-            System.out.println("Admin login successful!");
+            SessionIO.out().println("Admin login successful!");
             menuManagement(scanner, system);
         } else {
-            System.out.println("Invalid admin credentials.");
+            SessionIO.out().println("Invalid admin credentials.");
         }
     }
 
-    private static void loggedInCustomerMenu(Scanner scanner, ByteMeCanteenSystem system, List<CartItem> cart, String loginId) {
+    private static void loggedInCustomerMenu(Scanner scanner, ByteMeCanteenSystem system, String loginId) {
         while (true) {
-            System.out.println("\n1. Browse Menu");
-            System.out.println("2. Cart Operations");
-            System.out.println("3. Order Tracking");
-            System.out.println("4. View Item Reviews");
-            System.out.println("5. Leave a Review");
-            System.out.println("6. Go Back to Customer Menu");
+            SessionIO.out().println("\n1. Browse Menu");
+            SessionIO.out().println("2. Cart Operations");
+            SessionIO.out().println("3. Order Tracking");
+            SessionIO.out().println("4. View Item Reviews");
+            SessionIO.out().println("5. Leave a Review");
+            SessionIO.out().println("6. Go Back to Customer Menu");
 
             int choice = scanner.nextInt();
             scanner.nextLine();
             if (choice == 1) {
                 browseMenu(scanner, system);
             } else if (choice == 2) {
-                cartOperations(scanner, system, cart, loginId);
+                cartOperations(scanner, system, loginId);
             } else if (choice == 3) {
                 orderTracking(scanner, system, loginId);
             } else if (choice == 4) {
-                System.out.print("Enter item name to view reviews: ");
+                SessionIO.out().print("Enter item name to view reviews: ");
                 String itemName = scanner.nextLine();
-                system.viewReviews(itemName);
+                system.viewReviews(scanner, itemName);
             } else if (choice == 5) {
-                System.out.print("Enter item name to leave a review for: ");
+                SessionIO.out().print("Enter item name to leave a review for: ");
                 String itemName = scanner.nextLine();
                 system.leaveReview(scanner, itemName);
             } else if (choice == 6) {
-                System.out.println("Returning to Customer Menu...");
+                SessionIO.out().println("Returning to Customer Menu...");
                 break;
             } else {
-                System.out.println("Invalid choice. Please try again.");
+                SessionIO.out().println("Invalid choice. Please try again.");
             }
         }
     }
@@ -718,33 +1999,33 @@ public class ByteMe {
 
     public static void browseMenu(Scanner scanner, ByteMeCanteenSystem system) {
         while (true) {
-            System.out.println("\nBrowse Menu Options:");
-            System.out.println("1. View All Items");
-            System.out.println("2. Search by Name or Keyword");
-            System.out.println("3. Filter by Category");
-            System.out.println("4. Sort by Price");
-            System.out.println("5. Back to Customer Menu");
+            SessionIO.out().println("\nBrowse Menu Options:");
+            SessionIO.out().println("1. View All Items");
+            SessionIO.out().println("2. Search by Name or Keyword");
+            SessionIO.out().println("3. Filter by Category");
+            SessionIO.out().println("4. Sort by Price");
+            SessionIO.out().println("5. Back to Customer Menu");
             int choice = scanner.nextInt();
             scanner.nextLine();
 
             if (choice == 1) {
-                System.out.println("\nComplete Menu:");
+                SessionIO.out().println("\nComplete Menu:");
                 system.displayAllItems();
             } else if (choice == 2) {
-                System.out.print("Enter item name or keyword to search: ");
+                SessionIO.out().print("Enter item name or keyword to search: ");
                 String keyword = scanner.nextLine();
                 List<FoodItem> searchResults = system.searchMenu(keyword);
                 if (searchResults.isEmpty()) {
-                    System.out.println("No items found matching '" + keyword + "'.");
+                    SessionIO.out().println("No items found matching '" + keyword + "'.");
                 } else {
-                    System.out.println("Search Results:");
-                    searchResults.forEach(System.out::println);
+                    SessionIO.out().println("Search Results:");
+                    searchResults.forEach(SessionIO.out()::println);
                 }
             } else if (choice == 3) {
-                System.out.println("Select Category to Filter:");
-                System.out.println("1. Snacks");
-                System.out.println("2. Beverages");
-                System.out.println("3. Meals");
+                SessionIO.out().println("Select Category to Filter:");
+                SessionIO.out().println("1. Snacks");
+                SessionIO.out().println("2. Beverages");
+                SessionIO.out().println("3. Meals");
                 int categoryChoice = scanner.nextInt();
                 scanner.nextLine();
                 String category = switch (categoryChoice) {
@@ -752,105 +2033,110 @@ public class ByteMe {
                     case 2 -> "Beverages";
                     case 3 -> "Meals";
                     default -> {
-                        System.out.println("Invalid category choice.");
+                        SessionIO.out().println("Invalid category choice.");
                         yield null;
                     }
                 };
                 if (category != null) {
                     List<FoodItem> filteredItems = system.filterMenuByCategory(category);
                     if (filteredItems.isEmpty()) {
-                        System.out.println("No items found in category '" + category + "'.");
+                        SessionIO.out().println("No items found in category '" + category + "'.");
                     } else {
-                        System.out.println("Filtered Items:");
-                        filteredItems.forEach(System.out::println);
+                        SessionIO.out().println("Filtered Items:");
+                        filteredItems.forEach(SessionIO.out()::println);
                     }
                 }
             } else if (choice == 4) {
-                System.out.print("Sort by price (1 for Ascending, 2 for Descending): ");
+                SessionIO.out().print("Sort by price (1 for Ascending, 2 for Descending): ");
                 int sortChoice = scanner.nextInt();
                 scanner.nextLine();
                 boolean ascending = (sortChoice == 1);
                 List<FoodItem> sortedItems = system.sortMenuByPrice(ascending);
-                System.out.println("Sorted Menu:");
-                sortedItems.forEach(System.out::println);
+                SessionIO.out().println("Sorted Menu:");
+                sortedItems.forEach(SessionIO.out()::println);
             } else if (choice == 5) {
-                System.out.println("Returning to Customer Menu...");
+                SessionIO.out().println("Returning to Customer Menu...");
                 break;
 
             } else {
-                System.out.println("Invalid choice. Please try again.");
+                SessionIO.out().println("Invalid choice. Please try again.");
             }
         }
     }
 
-    public static String cartOperations(Scanner scanner, ByteMeCanteenSystem system, List<CartItem> cart, String loginId) {
+    public static String cartOperations(Scanner scanner, ByteMeCanteenSystem system, String loginId) {
+        Cart cart = system.getCart(loginId);
         while (true) {
-            System.out.println("\nCart Operations:");
-            System.out.println("1. Add Items");
-            System.out.println("2. Modify Item Quantity");
-            System.out.println("3. Remove Item");
-            System.out.println("4. View Cart");
-            System.out.println("5. Checkout");
-            System.out.println("6. Go Back");
+            SessionIO.out().println("\nCart Operations:");
+            SessionIO.out().println("1. Add Items");
+            SessionIO.out().println("2. Modify Item Quantity");
+            SessionIO.out().println("3. Remove Item");
+            SessionIO.out().println("4. View Cart");
+            SessionIO.out().println("5. Checkout");
+            SessionIO.out().println("6. Go Back");
             int choice = scanner.nextInt();
             scanner.nextLine();
 
             if (choice == 1) {
-                System.out.print("Enter food item name to add: ");
+                SessionIO.out().print("Enter food item name to add: ");
                 String itemName = scanner.nextLine();
-                FoodItem item = system.menu.values().stream()
-                        .filter(foodItem -> foodItem.name.equalsIgnoreCase(itemName) && foodItem.available)
-                        .findFirst()
-                        .orElse(null);
+                FoodItem item = system.getMenuItem(itemName);
                 if (item != null && item.available) {
-                    System.out.print("Enter quantity: ");
+                    SessionIO.out().print("Enter quantity: ");
                     int quantity = scanner.nextInt();
                     scanner.nextLine();
-                    cart.add(new CartItem(item, quantity));
-                    System.out.println(itemName + " added to cart.");
+                    CanteenEvents.CartAdd event = new CanteenEvents.CartAdd();
+                    event.begin();
+                    cart.add(item, quantity);
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.loginId = loginId;
+                        event.itemName = item.getName();
+                        event.quantity = quantity;
+                        event.amountCents = Math.round(item.price * 100) * quantity;
+                        event.commit();
+                    }
+                    SessionIO.out().println(itemName + " added to cart.");
                     return ("item added");
                 } else {
-                    System.out.println("Item not available.");
+                    SessionIO.out().println("Item not available.");
                     return ("item not available");
                 }
             } else if (choice == 2) {
-                System.out.print("Enter food item name to modify: ");
+                SessionIO.out().print("Enter food item name to modify: ");
                 String itemName = scanner.nextLine();
-                CartItem cartItem = cart.stream().filter(ci -> ci.item.name.equalsIgnoreCase(itemName)).findFirst().orElse(null);
-                if (cartItem != null) {
-                    System.out.print("Enter new quantity: ");
+                if (cart.contains(itemName)) {
+                    SessionIO.out().print("Enter new quantity: ");
                     int newQuantity = scanner.nextInt();
                     scanner.nextLine();
-                    cartItem.quantity = newQuantity;
-                    System.out.println("Quantity updated.");
+                    cart.setQuantity(itemName, newQuantity);
+                    SessionIO.out().println("Quantity updated.");
                 } else {
-                    System.out.println("Item not found in cart.");
+                    SessionIO.out().println("Item not found in cart.");
                 }
             } else if (choice == 3) {
-                System.out.print("Enter food item name to remove: ");
+                SessionIO.out().print("Enter food item name to remove: ");
                 String itemName = scanner.nextLine();
-                CartItem cartItem = cart.stream().filter(ci -> ci.item.name.equalsIgnoreCase(itemName)).findFirst().orElse(null);
-                if (cartItem != null) {
-                    cart.remove(cartItem);
-                    System.out.println(itemName + " removed from cart.");
+                if (cart.remove(itemName)) {
+                    SessionIO.out().println(itemName + " removed from cart.");
                 } else {
-                    System.out.println("Item not found in cart.");
+                    SessionIO.out().println("Item not found in cart.");
                 }
             } else if (choice == 4) {
                 if (cart.isEmpty()) {
-                    System.out.println("Cart is empty.");
+                    SessionIO.out().println("Cart is empty.");
                 } else {
-                    System.out.println("Your Cart:");
-                    cart.forEach(System.out::println);
+                    SessionIO.out().println("Your Cart:");
+                    cart.getItems().forEach(SessionIO.out()::println);
                 }
             } else if (choice == 5) {
                 checkout(scanner, cart, loginId, system);
                 break;
             } else if (choice == 6) {
-                System.out.println("Returning to Customer Menu...");
+                SessionIO.out().println("Returning to Customer Menu...");
                 break;
             } else {
-                System.out.println("Invalid choice. Please try again.");
+                SessionIO.out().println("Invalid choice. Please try again.");
             }
         }
     return ("trash");
@@ -858,73 +2144,85 @@ public class ByteMe {
 
     public static void orderTracking(Scanner scanner, ByteMeCanteenSystem system, String loginId) {
         while (true) {
-            System.out.println("\nOrder Tracking Options:");
-            System.out.println("1. View Order Status");
-            System.out.println("2. Cancel Order");
-            System.out.println("3. View Order History");
-            System.out.println("4. Reorder Previous Order");
-            System.out.println("5. Go Back");
+            SessionIO.out().println("\nOrder Tracking Options:");
+            SessionIO.out().println("1. View Order Status");
+            SessionIO.out().println("2. Cancel Order");
+            SessionIO.out().println("3. View Order History");
+            SessionIO.out().println("4. Reorder Previous Order");
+            SessionIO.out().println("5. Go Back");
             int choice = scanner.nextInt();
             scanner.nextLine();
 
             if (choice == 1) {
                 List<Order> orders = system.getOrderHistory(loginId);
                 if (orders.isEmpty()) {
-                    System.out.println("You have no active orders.");
+                    SessionIO.out().println("You have no active orders.");
                 } else {
 
-                    for (int i = 0; i < orders.size(); i++) {
-                        System.out.println("Order #" + (i + 1) + ": " + orders.get(i).getStatus());
+                    for (Order order : orders) {
+                        SessionIO.out().println("Order #" + order.getId() + ": " + order.getStatus());
                     }
                 }
             } else if (choice == 2) {
                 List<Order> orders = system.getOrderHistory(loginId);
                 if (orders.isEmpty()) {
-                    System.out.println("You have no active orders to cancel.");
+                    SessionIO.out().println("You have no active orders to cancel.");
                 } else {
-                    System.out.print("Enter the order number you wish to cancel (e.g., 1, 2): ");
-                    int orderNumber = scanner.nextInt();
+                    SessionIO.out().print("Enter the order number you wish to cancel: ");
+                    long orderId = scanner.nextLong();
                     scanner.nextLine();
-                    if (orderNumber > 0 && orderNumber <= orders.size()) {
-                        orders.get(orderNumber - 1).cancelOrder();
-                        System.out.println("Order #" + orderNumber + " has been canceled.");
+                    Order orderToCancel = system.getOrder(loginId, orderId);
+                    if (orderToCancel == null) {
+                        SessionIO.out().println("Invalid order number.");
+                    } else if (orderToCancel.cancelOrder()) {
+                        SessionIO.out().println("Order #" + orderId + " has been canceled.");
                     } else {
-                        System.out.println("Invalid order number.");
+                        SessionIO.out().println("Order #" + orderId + " is " + orderToCancel.getStatus() + " and can no longer be canceled.");
                     }
                 }
             } else if (choice == 3) {
                 List<Order> orders = system.getOrderHistory(loginId);
                 if (orders.isEmpty()) {
-                    System.out.println("No order history found.");
+                    SessionIO.out().println("No order history found.");
                 } else {
-                    System.out.println("Your Order History:");
-                    int orderNumber = 1;
+                    SessionIO.out().println("Your Order History:");
                     for (Order order : orders) {
-                        System.out.println("Order #" + orderNumber + ": " + order);
-                        orderNumber++;
+                        SessionIO.out().println("Order #" + order.getId() + ": " + order);
                     }
                 }
             } else if (choice == 4) {
                 List<Order> orders = system.getOrderHistory(loginId);
                 if (orders.isEmpty()) {
-                    System.out.println("No order history found.");
+                    SessionIO.out().println("No order history found.");
                 } else {
-                    System.out.print("Enter the order number you wish to reorder (e.g., 1, 2): ");
-                    int orderNumber = scanner.nextInt();
+                    SessionIO.out().print("Enter the order number you wish to reorder: ");
+                    long orderId = scanner.nextLong();
                     scanner.nextLine();
-                    if (orderNumber > 0 && orderNumber <= orders.size()) {
-                        Order orderToReorder = orders.get(orderNumber - 1);
-                        system.createOrder(loginId, new ArrayList<>(orderToReorder.getItems()), orderToReorder.specialRequest, system);
-                        System.out.println("Order #" + orderNumber + " has been reordered successfully!");
+                    Order orderToReorder = system.getOrder(loginId, orderId);
+                    if (orderToReorder != null) {
+                        // A reorder is a new checkout, at today's menu prices.
+                        List<CartItem> items = new ArrayList<>();
+                        for (int i = 0; i < orderToReorder.getLineCount(); i++) {
+                            FoodItem item = system.getMenuItem(orderToReorder.getItemName(i));
+                            if (item != null) {
+                                items.add(new CartItem(item, orderToReorder.getQuantity(i)));
+                            }
+                        }
+                        if (items.isEmpty()) {
+                            SessionIO.out().println("None of the items in that order are on the menu any more.");
+                        } else {
+                            system.createOrder(loginId, items, orderToReorder.specialRequest, system);
+                            SessionIO.out().println("Order #" + orderId + " has been reordered successfully!");
+                        }
                     } else {
-                        System.out.println("Invalid order number.");
+                        SessionIO.out().println("Invalid order number.");
                     }
                 }
             } else if (choice == 5) {
-                System.out.println("Returning to Customer Menu...");
+                SessionIO.out().println("Returning to Customer Menu...");
                 break;
             } else {
-                System.out.println("Invalid choice. Please try again.");
+                SessionIO.out().println("Invalid choice. Please try again.");
             }
         }
     }
@@ -933,84 +2231,95 @@ public class ByteMe {
     public void leaveReview(FoodItem item) {
         Scanner scanner = new Scanner(System.in);
 
-        System.out.print("Enter your name: ");
+        SessionIO.out().print("Enter your name: ");
         String customerName = scanner.nextLine();
 
-        System.out.print("Enter your review: ");
+        SessionIO.out().print("Enter your review: ");
         String reviewText = scanner.nextLine();
 
-        System.out.print("Enter your rating (1-5): ");
+        SessionIO.out().print("Enter your rating (1-5): ");
         int rating = scanner.nextInt();
 
         Review review = new Review(customerName, reviewText, rating);
         item.addReview(review);
-        System.out.println("Thank you for your review!");
+        SessionIO.out().println("Thank you for your review!");
     }
 
     public void viewReviews(FoodItem item) {
-        List<Review> reviews = item.getReviews();
-        if (reviews.isEmpty()) {
-            System.out.println("No reviews yet for this item.");
+        int count = item.getReviewCount();
+        if (count == 0) {
+            SessionIO.out().println("No reviews yet for this item.");
         } else {
-            System.out.println("Reviews for " + item.getName() + ":");
-            for (Review review : reviews) {
-                System.out.println(review);
+            SessionIO.out().printf("Reviews for %s: %.1f/5 from %d review%s%n", item.getName(), item.getAverageRating(), count, count == 1 ? "" : "s");
+            for (Review review : item.getReviews(count, ByteMeCanteenSystem.REVIEW_PAGE_SIZE).reviews) {
+                SessionIO.out().println(review);
             }
         }
     }
 
-    public static void checkout(Scanner scanner, List<CartItem> cart, String loginId, ByteMeCanteenSystem system) {
+    public static void checkout(Scanner scanner, Cart cart, String loginId, ByteMeCanteenSystem system) {
         if (cart.isEmpty()) {
-            System.out.println("Your cart is empty. Cannot proceed to checkout.");
+            SessionIO.out().println("Your cart is empty. Cannot proceed to checkout.");
             return;
         }
-        System.out.print("Enter delivery address: ");
+        SessionIO.out().print("Enter delivery address: ");
         String deliveryAddress = scanner.nextLine();
 
-        double totalAmount = cart.stream().mapToDouble(CartItem::getTotalPrice).sum();
-        System.out.println("Total Amount: $" + totalAmount);
+        // The amount charged and the order placed both come from the prices captured in the cart.
+        List<CartItem> items = cart.getItems();
+        long totalCents = cart.getTotalCents();
+        SessionIO.out().println("Total Amount: $" + totalCents / 100.0);
 
-        System.out.println("Select Payment Method:");
-        System.out.println("1. Pay by Cash");
-        System.out.println("2. Pay by Card");
+        SessionIO.out().println("Select Payment Method:");
+        SessionIO.out().println("1. Pay by Cash");
+        SessionIO.out().println("2. Pay by Card");
         int paymentMethod = scanner.nextInt();
         scanner.nextLine();
 
         boolean paymentSuccessful = false;
         if (paymentMethod == 1) {
-            System.out.print("Enter total amount to pay (exact): ");
+            SessionIO.out().print("Enter total amount to pay (exact): ");
             double cashPayment = scanner.nextDouble();
-            if (cashPayment == totalAmount) {
+            if (Math.round(cashPayment * 100) == totalCents) {
                 paymentSuccessful = true;
             } else {
-                System.out.println("Incorrect amount. Payment failed.");
+                SessionIO.out().println("Incorrect amount. Payment failed.");
             }
         } else if (paymentMethod == 2) {
-            System.out.print("Enter card number: ");
+            SessionIO.out().print("Enter card number: ");
             String cardNumber = scanner.nextLine();
-            System.out.print("Enter total amount to pay (exact): ");
+            SessionIO.out().print("Enter total amount to pay (exact): ");
             double cardPayment = scanner.nextDouble();
-            if (cardPayment == totalAmount) {
+            if (Math.round(cardPayment * 100) == totalCents) {
                 paymentSuccessful = true;
             } else {
-                System.out.println("Incorrect amount. Payment failed.");
+                SessionIO.out().println("Incorrect amount. Payment failed.");
             }
         } else {
-            System.out.println("Invalid payment method selected.");
+            SessionIO.out().println("Invalid payment method selected.");
         }
 
-        if (paymentSuccessful) {
-            File myFile = new File(loginId + ".txt");
-            try {
-                myFile.createNewFile();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+        CanteenEvents.Checkout event = new CanteenEvents.Checkout();
+        event.begin();
+        if (event.isEnabled()) {
+            event.loginId = loginId;
+            event.lines = items.size();
+            for (CartItem line : items) {
+                event.items += line.quantity;
             }
-            System.out.println("Payment successful! Thank you for your order.");
-            system.createOrder(loginId, cart, deliveryAddress, system);
-            System.out.println("Order created successfully! You can track your order now.");
+            event.amountCents = totalCents;
+            event.paymentMethod = paymentMethod == 1 ? "cash" : paymentMethod == 2 ? "card" : null;
+            event.paid = paymentSuccessful;
+        }
+        if (paymentSuccessful) {
+            long start = System.nanoTime();
+            SessionIO.out().println("Payment successful! Thank you for your order.");
+            system.createOrder(loginId, items, deliveryAddress, system);
+            SessionIO.out().println("Order created successfully! You can track your order now.");
             cart.clear();
+            system.metrics.record(CanteenMetrics.Operation.CHECKOUT, start);
         }
+        event.commit();
     }
 
     ByteMeCanteenSystem s1 = new ByteMeCanteenSystem();
@@ -1029,7 +2338,7 @@ public class ByteMe {
             oos.writeObject(s3);
             oos.close();
             fos.close();
-            System.out.println("Object saved in file");
+            SessionIO.out().println("Object saved in file");
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
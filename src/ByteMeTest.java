@@ -1,11 +1,52 @@
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import static org.junit.jupiter.api.Assertions.*;
 
 class ByteMeTest {
@@ -17,10 +58,15 @@ class ByteMeTest {
     private ByteMeCanteenSystem system;
     private CartItem item ;
     private static final String loginId = "hi4";
+    // Order journals go here rather than into the working directory.
+    @TempDir
+    File workDir;
+
     @BeforeEach
     void setup(){
         scanner = new Scanner(System.in);
         system = new ByteMeCanteenSystem();
+        system.orderJournal = new OrderJournal(workDir);
         item = new CartItem(item4,quantity);
         cart = new ArrayList<>();
         customerAccounts = new HashMap<>();
@@ -30,57 +76,840 @@ class ByteMeTest {
     @Test
     void testaddunavailableitems(){
         scanner = new Scanner("1\nPizza\n2");
-        String result = ByteMe.cartOperations(scanner, system, cart, loginId);
+        String result = ByteMe.cartOperations(scanner, system, loginId);
         assertEquals("item not available", result);
 
     }
     @Test
     void testaddunavailableitems2(){
         scanner = new Scanner("1\nVadaPav\n2");
-        String result = ByteMe.cartOperations(scanner, system, cart, loginId);
+        String result = ByteMe.cartOperations(scanner, system, loginId);
         assertEquals("item not available", result);
 
     }
     @Test
     void testAddAvailableItem() {
         scanner = new Scanner("1\nBurger\n2\n3");
-        String result = ByteMe.cartOperations(scanner, system, cart, loginId);
+        String result = ByteMe.cartOperations(scanner, system, loginId);
         assertEquals("item added", result);
 
     }
     @Test
     void testAddAvailableItem2() {
         scanner = new Scanner("1\nSoda\n2\n3");
-        String result = ByteMe.cartOperations(scanner, system, cart, loginId);
+        String result = ByteMe.cartOperations(scanner, system, loginId);
         assertEquals("item added", result);
 
     }
     @Test
     void testInvalidLogin(){
         scanner = new Scanner("2\naa\na");
-        String result = ByteMe.customerMenu(scanner, system, cart);
+        String result = ByteMe.customerMenu(scanner, system);
         assertEquals("Invalid login credentials.", result);
     }
     @Test
     void testInvalidLogin2(){
         scanner = new Scanner("2\nhi\npass");
-        String result = ByteMe.customerMenu(scanner, system, cart);
+        String result = ByteMe.customerMenu(scanner, system);
         assertEquals("Invalid login credentials.", result);
     }
     @Test
     void testValidLogin(){
         scanner = new Scanner("2\na\na\n5");
-        String result = ByteMe.customerMenu(scanner, system, cart);
+        String result = ByteMe.customerMenu(scanner, system);
         assertEquals("\nLogin successful!", result);
     }
     @Test
     void testValidLogin2(){
         scanner = new Scanner("2\nhi4\npass\n5");
-        String result = ByteMe.customerMenu(scanner, system, cart);
+        String result = ByteMe.customerMenu(scanner, system);
         assertEquals("\nLogin successful!", result);
     }
+    @Test
+    void testCodecRoundTrip() throws IOException {
+        system.getMenuItem("Burger").addReview(new Review("ann", "tasty", 5));
+        system.addMenuItem(new FoodItem("Samosa", 0.333, null, false));
+        cart.add(new CartItem(system.getMenuItem("Burger"), 2));
+        cart.add(new CartItem(new FoodItem("Retired", 4.25, "Meals", true), 1));
+        system.createOrder(loginId, cart, "no onions", system);
+        system.createOrder(loginId, cart, null, system);
+        system.getOrderHistory(loginId).get(1).cancelOrder();
+
+        ByteMeCanteenSystem decoded = CanteenCodec.decode(CanteenCodec.encode(system));
+        assertEquals(system.customerAccounts, decoded.customerAccounts);
+        assertEquals(system.menu.keySet(), decoded.menu.keySet());
+        assertEquals(system.menu.values().toString(), decoded.menu.values().toString());
+        assertEquals(1, decoded.getMenuItem("Burger").getReviewCount());
+        assertEquals(5.0, decoded.getMenuItem("Burger").getAverageRating());
+        assertEquals(system.getOrderHistory(loginId).toString(), decoded.getOrderHistory(loginId).toString());
+        assertEquals(1425, decoded.getOrderHistory(loginId).get(0).getTotalCents());
+
+        system.getCart("a").add(system.getMenuItem("Soda"), 3);
+        system.getCart("a").add(system.getMenuItem("soda"), 1);
+        Map<String, Cart> decodedCarts = CanteenCodec.decodeCarts(CanteenCodec.encodeCarts(system.carts));
+        assertEquals(system.carts.keySet(), decodedCarts.keySet());
+        assertEquals("[Soda - Quantity: 4 - Total: $6.0]", decodedCarts.get("a").toString());
+    }
+
+    @Test
+    void testPendingOrdersFollowStatusChanges() {
+        cart.add(new CartItem(system.getMenuItem("Soda"), 1));
+        system.createOrder(loginId, cart, "first", system);
+        system.createOrder("a", cart, "second", system);
+        assertEquals(2, system.getPendingOrders().size());
+
+        Order first = system.getOrderHistory(loginId).get(0);
+        first.setStatus(OrderStatus.PREPARING);
+        assertEquals(1, system.getPendingOrders().size());
+        assertEquals(List.of(first), system.getLiveOrders(OrderStatus.PREPARING));
+
+        system.getOrderHistory("a").get(0).cancelOrder();
+        assertTrue(system.getPendingOrders().isEmpty());
+    }
+
+    @Test
+    void testSearchMenuMatchesLinearScan() {
+        String[] words = {"Paneer", "Masala", "Dosa", "Chai", "Cold", "Coffee", "Veg", "Burger", "Tikka", "Roll", "Aloo", "Soda"};
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            String name = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)] + " " + i;
+            system.addItemToMenu(random.nextBoolean() ? name : name.toUpperCase(), 1 + random.nextInt(20), "Meals", true);
+        }
+        system.removeMenuItem("Soda");
+        for (int i = 0; i < 500; i++) {
+            system.removeMenuItem(system.menu.firstKey());
+        }
+
+        String[] queries = {"", "a", "co", "cof", "OFF", "sala d", "tikka roll 4", "burger", "zzz", "1", "99", "veg veg", "Chai Chai 10"};
+        for (String query : queries) {
+            List<FoodItem> expected = system.menu.values().stream()
+                    .filter(item -> item.name.toLowerCase().contains(query.toLowerCase()))
+                    .collect(Collectors.toList());
+            assertEquals(expected, system.searchMenu(query), query);
+        }
+    }
+
+    @Test
+    void testBrowseIndexesFollowMenuChanges() {
+        system.addItemToMenu("Tea", 1.50, "beverages", true);
+        system.getMenuItem("Burger").setPrice(1.50);
+        system.removeMenuItem("Fries");
+
+        List<FoodItem> ascending = system.menu.values().stream()
+                .sorted(Comparator.comparingDouble(item -> item.price)).collect(Collectors.toList());
+        List<FoodItem> descending = system.menu.values().stream()
+                .sorted(Comparator.comparingDouble(item -> -item.price)).collect(Collectors.toList());
+        assertEquals(ascending, system.sortMenuByPrice(true));
+        assertEquals(descending, system.sortMenuByPrice(false));
+        assertEquals(List.of(system.getMenuItem("Coffee"), system.getMenuItem("Soda"), system.getMenuItem("Tea")),
+                system.filterMenuByCategory("Beverages"));
+        assertEquals(List.of(system.getMenuItem("Burger")), system.filterMenuByCategory("SNACKS"));
+    }
+
+    @Test
+    void testAddItemIgnoresCase() {
+        scanner = new Scanner("1\nbUrGeR\n2\n3");
+        String result = ByteMe.cartOperations(scanner, system, loginId);
+        assertEquals("item added", result);
+        assertSame(system.getMenuItem("Burger"), system.getCart(loginId).getItems().get(0).item);
+    }
+
+    @Test
+    void testCheckoutChargesThePricesTheCartCaptured(@TempDir File dir) {
+        system.orderJournal = new OrderJournal(dir);
+        Cart cart = system.getCart(loginId);
+        cart.add(system.getMenuItem("Burger"), 2);
+        cart.add(system.getMenuItem("Fries"), 1);
+        system.getMenuItem("Burger").setPrice(9.00);
+        system.getMenuItem("Fries").setPrice(0.10);
+        assertTrue(cart.setQuantity("Burger", 3));
+        assertTrue(cart.remove("Fries"));
+        assertEquals(1500, cart.getTotalCents());
+
+        // Paying at the new menu price is refused; the cart's own total is charged and recorded.
+        ByteMe.checkout(new Scanner("Hostel 1\n1\n27.00\n").useLocale(Locale.ROOT), cart, loginId, system);
+        assertTrue(system.getOrderHistory(loginId).isEmpty());
+        ByteMe.checkout(new Scanner("Hostel 1\n1\n15.00\n").useLocale(Locale.ROOT), cart, loginId, system);
+        assertEquals(1500, system.getOrderHistory(loginId).get(0).getTotalCents());
+        assertEquals(500, system.getOrderHistory(loginId).get(0).getUnitPriceCents(0));
+        assertTrue(cart.isEmpty());
+        assertEquals(0, cart.getTotalCents());
+    }
+
+    @Test
+    void testCartMergesLinesAndKeepsTotal() {
+        Cart cart = system.getCart(loginId);
+        cart.add(system.getMenuItem("Burger"), 1);
+        cart.add(system.getMenuItem("Fries"), 2);
+        cart.add(system.getMenuItem("burger"), 4);
+        assertEquals(2, cart.getItems().size());
+        assertEquals(30.0, cart.getTotal());
+
+        assertTrue(cart.setQuantity("FRIES", 1));
+        assertEquals(27.5, cart.getTotal());
+        assertTrue(cart.remove("Burger"));
+        assertEquals(2.5, cart.getTotal());
+        assertTrue(system.getCart("a").isEmpty());
+    }
+
+    @Test
+    void testParallelCreateOrderLosesNothing(@TempDir File journalDir) throws Exception {
+        system.orderJournal = new OrderJournal(journalDir);
+        int threads = 8;
+        int ordersPerThread = 500;
+        int customers = 20;
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < ordersPerThread; i++) {
+                    List<CartItem> lines = List.of(new CartItem(system.getMenuItem("Fries"), 1));
+                    system.createOrder("stress" + ((thread + i) % customers), lines, "t" + thread, system);
+                }
+                return null;
+            }));
+        }
+        futures.add(pool.submit(() -> {
+            start.await();
+            for (int i = 0; i < 200; i++) {
+                system.getPendingOrders();
+                system.getOrderHistory("stress0").forEach(Order::toString);
+                system.sortMenuByPrice(i % 2 == 0);
+            }
+            return null;
+        }));
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        int total = 0;
+        for (int c = 0; c < customers; c++) {
+            total += system.getOrderHistory("stress" + c).size();
+        }
+        assertEquals(threads * ordersPerThread, total);
+        assertEquals(threads * ordersPerThread, system.getPendingOrders().size());
+    }
+
+    @Test
+    void testDailySalesReportFollowsOrders() {
+        cart.add(new CartItem(system.getMenuItem("Burger"), 2));
+        cart.add(new CartItem(system.getMenuItem("Soda"), 1));
+        system.createOrder(loginId, cart, "one", system);
+        system.createOrder("a", cart, "two", system);
+        system.createOrder("a", List.of(new CartItem(system.getMenuItem("Coffee"), 1)), "three", system);
+        assertEquals(3, system.salesReport.getOrderCount());
+        assertEquals(2600, system.salesReport.getTotalSalesCents());
+
+        system.getOrderHistory("a").get(0).cancelOrder();
+        system.getOrderHistory("a").get(0).setStatus(OrderStatus.REFUNDED);
+        system.getOrderHistory("a").get(1).setStatus(OrderStatus.REFUNDED);
+        assertEquals(1, system.salesReport.getOrderCount());
+        assertEquals(1150, system.salesReport.getTotalSalesCents());
+        assertEquals(List.of(Map.entry("Burger", 2L), Map.entry("Soda", 1L)), system.salesReport.getMostPopularItems(10));
+    }
+
+    @Test
+    void testPopularItemsSlideOutOfWindow() {
+        long start = 1_700_000_000_000L;
+        PopularItemsTracker tracker = new PopularItemsTracker(Clock.fixed(Instant.ofEpochMilli(start + 90 * 60_000L), ZoneOffset.UTC));
+        tracker.record("Burger", 5, start);
+        tracker.record("Soda", 2, start + 80 * 60_000L);
+        tracker.record("Coffee", 1, start + 85 * 60_000L);
+        tracker.record("Soda", 10, start + 89 * 60_000L);
+        // Far more distinct items than a minute's bucket holds; the heavy hitter keeps its counter.
+        for (int i = 0; i < 100; i++) {
+            tracker.record("Noise" + i, 1, start + 89 * 60_000L);
+        }
+
+        assertEquals(Map.entry("Soda", 12L), tracker.topItems(15, 1).get(0));
+        assertEquals(List.of(Map.entry("Soda", 12L), Map.entry("Burger", 5L)), tracker.topItems(PopularItemsTracker.DAY_MINUTES, 2));
+        assertFalse(tracker.topItems(60, 200).stream().anyMatch(e -> e.getKey().equals("Burger")));
+    }
+
+    @Test
+    void testRatingAggregatesAndReviewPages() {
+        FoodItem burger = system.getMenuItem("Burger");
+        for (int i = 1; i <= 12; i++) {
+            burger.addReview(new Review("c" + i, "review " + i, i % 5 + 1));
+        }
+        assertEquals(12, burger.getReviewCount());
+        assertEquals(35 / 12.0, burger.getAverageRating(), 1e-9);
+        assertArrayEquals(new int[]{2, 3, 3, 2, 2}, burger.getRatingHistogram());
+
+        ReviewPage first = burger.getReviews(burger.getReviewCount(), 5);
+        assertEquals(List.of("review 12", "review 11", "review 10", "review 9", "review 8"),
+                first.reviews.stream().map(Review::getReviewText).collect(Collectors.toList()));
+        burger.addReview(new Review("late", "newer than the first page", 5));
+        ReviewPage second = burger.getReviews(first.nextCursor, 5);
+        assertEquals("review 7", second.reviews.get(0).getReviewText());
+        ReviewPage last = burger.getReviews(second.nextCursor, 5);
+        assertEquals(2, last.reviews.size());
+        assertFalse(last.hasMore());
+    }
+
+    @Test
+    void testReviewsLiveInReviewStore(@TempDir File directory) throws IOException {
+        // Reviews left before the store existed are moved into it.
+        system.getMenuItem("Burger").addReview(new Review("ann", "tasty", 5));
+        system.setReviewStore(new ReviewStore(directory));
+        system.getMenuItem("Burger").addReview(new Review("bob", "cold", 2));
+        system.getMenuItem("Soda").addReview(new Review("cy", "fizzy", 4));
+
+        ByteMeCanteenSystem decoded = CanteenCodec.decode(CanteenCodec.encode(system));
+        decoded.setReviewStore(new ReviewStore(directory));
+        FoodItem burger = decoded.getMenuItem("Burger");
+        assertNull(burger.reviews);
+        assertEquals(2, burger.getReviewCount());
+        assertEquals(3.5, burger.getAverageRating());
+        assertNull(burger.reviews);
+        // Serializing the item leaves its reviews in the store.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(burger);
+        }
+        assertNull(burger.reviews);
+
+        burger.addReview(new Review("dee", "better now", 4));
+        assertEquals(List.of("better now", "cold", "tasty"),
+                burger.getReviews(burger.getReviewCount(), 5).reviews.stream().map(Review::getReviewText).collect(Collectors.toList()));
+        assertEquals(List.of("fizzy"),
+                new ReviewStore(directory).read("SODA").stream().map(Review::getReviewText).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testReviewStoreCutsOffTruncatedSegments(@TempDir File directory) throws IOException {
+        ReviewStore store = new ReviewStore(directory);
+        store.append("Tea", List.of(new Review("ann", "hot", 5), new Review("bob", "weak", 2)));
+        File segment = new File(directory, "tea.reviews");
+        long whole = segment.length();
+
+        // A length header that promises more than the file holds is dropped, not allocated.
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(whole);
+            file.writeInt(Integer.MAX_VALUE);
+            file.writeInt(7);
+        }
+        assertEquals(List.of("hot", "weak"), store.read("Tea").stream().map(Review::getReviewText).collect(Collectors.toList()));
+        assertEquals(whole, segment.length());
+
+        // So is half a length header.
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(whole);
+            file.writeShort(1);
+        }
+        assertEquals(2, store.read("Tea").size());
+        assertEquals(whole, segment.length());
+
+        // And a record cut short loses only itself.
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(whole - 1);
+        }
+        assertEquals(List.of("hot"), store.read("Tea").stream().map(Review::getReviewText).collect(Collectors.toList()));
+        store.append("Tea", List.of(new Review("cy", "fine", 4)));
+        assertEquals(List.of("hot", "fine"), store.read("Tea").stream().map(Review::getReviewText).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testOrderKeepsCheckoutPrices() throws IOException, ClassNotFoundException {
+        cart.add(new CartItem(system.getMenuItem("Burger"), 2));
+        cart.add(new CartItem(system.getMenuItem("Soda"), 3));
+        system.createOrder(loginId, cart, null, system);
+        system.getMenuItem("Burger").setPrice(7.0);
+
+        Order order = system.getOrderHistory(loginId).get(0);
+        assertEquals(1450, order.getTotalCents());
+        assertEquals(500, order.getUnitPriceCents(0));
+        assertEquals("Order{items=[Burger - Quantity: 2 - Total: $10.0, Soda - Quantity: 3 - Total: $4.5], status='Pending', specialRequest='null'}", order.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(order);
+        }
+        Order copy = (Order) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(order.toString(), copy.toString());
+        assertEquals(1450, copy.getTotalCents());
+    }
+
+    @Test
+    void testOrdersAreFoundById() throws IOException {
+        cart.add(new CartItem(system.getMenuItem("Burger"), 1));
+        system.createOrder(loginId, cart, "one", system);
+        system.createOrder("a", cart, "two", system);
+        Order first = system.getOrderHistory(loginId).get(0);
+        Order second = system.getOrderHistory("a").get(0);
+        assertEquals(first.getId() + 1, second.getId());
+        assertSame(second, system.getOrder(second.getId()));
+        assertSame(second, system.getOrder("a", second.getId()));
+        assertNull(system.getOrder(loginId, second.getId()));
+        assertNull(system.getOrder(second.getId() + 1));
+
+        ByteMeCanteenSystem decoded = CanteenCodec.decode(CanteenCodec.encode(system));
+        assertEquals("two", decoded.getOrder(second.getId()).getSpecialRequest());
+        decoded.orderJournal = system.orderJournal;
+        decoded.createOrder("a", cart, "three", decoded);
+        assertEquals(second.getId() + 1, decoded.getOrderHistory("a").get(1).getId());
+
+        OrderIndex index = new OrderIndex();
+        for (long id = 1; id <= 3 * OrderIndex.CHUNK_SIZE; id += 7) {
+            Order order = new Order();
+            order.id = id;
+            index.put(order);
+        }
+        assertEquals(1 + 7 * 300, index.get(1 + 7 * 300).getId());
+        assertNull(index.get(2));
+        assertNull(index.get(10 * OrderIndex.CHUNK_SIZE));
+    }
+
+    @Test
+    void testOrderStatusTransitionsAreEnforced() {
+        cart.add(new CartItem(system.getMenuItem("Soda"), 1));
+        system.createOrder(loginId, cart, null, system);
+        Order order = system.getOrderHistory(loginId).get(0);
+
+        assertFalse(order.setStatus(OrderStatus.COMPLETED));
+        assertTrue(order.setStatus(OrderStatus.PREPARING));
+        assertTrue(order.setStatus(OrderStatus.OUT_FOR_DELIVERY));
+        assertFalse(order.setStatus(OrderStatus.PREPARING));
+        assertTrue(order.setStatus(OrderStatus.COMPLETED));
+        assertFalse(order.cancelOrder());
+        assertTrue(order.setStatus(OrderStatus.REFUNDED));
+        assertFalse(order.setStatus(OrderStatus.REFUNDED));
+        assertEquals(OrderStatus.REFUNDED, order.getStatus());
+        assertEquals(1, system.getOrderCount(OrderStatus.REFUNDED));
+        assertEquals(0, system.getOrderCount(OrderStatus.COMPLETED));
+
+        assertEquals(OrderStatus.OUT_FOR_DELIVERY, OrderStatus.parse(" out for delivery"));
+        assertEquals(OrderStatus.COMPLETED, OrderStatus.migrate("delivered"));
+        assertEquals("Preparing, Canceled, Refunded", OrderStatus.PENDING.describeNext());
+    }
+
+    @Test
+    void testLoadGeneratorReplaysSessions(@TempDir File dir) throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos);
+        }
+        assertEquals(50_000, histogram.getValueAtPercentile(50), 50_000 / 64.0);
+        assertEquals(99_000, histogram.getValueAtPercentile(99), 99_000 / 64.0);
+        assertEquals(100_000, histogram.getValueAtPercentile(100));
+
+        system.orderJournal = new OrderJournal(dir);
+        LoadGenerator generator = new LoadGenerator(system);
+        generator.run("load-test-", 20, 2, 4);
+
+        assertEquals(20, generator.getLatencies(LoadGenerator.Operation.REGISTER).getCount());
+        assertEquals(40, generator.getLatencies(LoadGenerator.Operation.LOGIN).getCount());
+        long orders = 0;
+        for (int c = 0; c < 20; c++) {
+            orders += system.getOrderHistory("load-test-" + c).size();
+        }
+        assertTrue(orders > 0);
+        assertEquals(orders, generator.getOrdersPlaced());
+    }
+
+    @Test
+    void testMetricsArePublishedOverJmx(@TempDir File dir) throws Exception {
+        system.orderJournal = new OrderJournal(dir);
+        cart.add(new CartItem(system.getMenuItem("Soda"), 2));
+        system.createOrder(loginId, cart, null, system);
+        system.createOrder(loginId, cart, null, system);
+        system.searchMenu("burger");
+        system.metrics.register();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(CanteenMetrics.OBJECT_NAME);
+        assertEquals(2L, server.getAttribute(name, "PendingQueueDepth"));
+        assertEquals(2L, server.getAttribute(name, "OrdersInHistory"));
+        CanteenMetricsMXBean metrics = JMX.newMXBeanProxy(server, name, CanteenMetricsMXBean.class);
+        assertEquals(2L, metrics.getOperationCounts().get("createOrder"));
+        assertEquals(1L, metrics.getOperationCounts().get("searchMenu"));
+        assertTrue(metrics.getMaxLatencyMicros().get("createOrder") > 0);
+
+        metrics.resetLatencies();
+        assertEquals(0L, system.metrics.getLatencies(CanteenMetrics.Operation.CREATE_ORDER).getCount());
+        server.unregisterMBean(name);
+    }
+
+    @Test
+    void testOrderLifecycleIsRecordedInFlightRecordings(@TempDir File dir) throws Exception {
+        system.orderJournal = new OrderJournal(dir);
+        cart.add(new CartItem(system.getMenuItem("Soda"), 2));
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("byteme.CreateOrder");
+            recording.enable("byteme.OrderStatusChange");
+            recording.start();
+            system.createOrder(loginId, cart, null, system);
+            Order order = system.getOrderHistory(loginId).get(0);
+            order.setStatus(OrderStatus.COMPLETED);
+            order.cancelOrder();
+            recording.stop();
+            Path file = new File(dir, "orders.jfr").toPath();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        }
+
+        RecordedEvent created = events.stream().filter(e -> e.getEventType().getName().equals("byteme.CreateOrder")).findFirst().orElseThrow();
+        assertEquals(loginId, created.getString("loginId"));
+        assertEquals(2, created.getInt("items"));
+        assertEquals(300, created.getLong("amountCents"));
+        List<RecordedEvent> changes = events.stream().filter(e -> e.getEventType().getName().equals("byteme.OrderStatusChange"))
+                .sorted(Comparator.comparing(RecordedEvent::getStartTime)).collect(Collectors.toList());
+        assertEquals(2, changes.size());
+        assertFalse(changes.get(0).getBoolean("accepted"));
+        assertEquals("Canceled", changes.get(1).getString("to"));
+        assertTrue(changes.get(1).getBoolean("accepted"));
+    }
+
+    @Test
+    void testOrderHistoryTableModelReadsOrders() {
+        cart.add(new CartItem(system.getMenuItem("Burger"), 2));
+        cart.add(new CartItem(system.getMenuItem("Soda"), 1));
+        system.createOrder(loginId, cart, null, system);
+        system.createOrder(loginId, List.of(new CartItem(system.getMenuItem("Coffee"), 1)), null, system);
+        List<Order> orders = system.getOrderHistory(loginId);
+
+        OrderHistoryTableModel model = new OrderHistoryTableModel();
+        model.addOrders(orders.subList(0, 1));
+        model.addOrders(orders.subList(1, 2));
+        assertEquals(2, model.getRowCount());
+        assertEquals(orders.get(0).getId(), model.getValueAt(0, 0));
+        assertEquals("Burger x2, Soda x1", model.getValueAt(0, 1));
+        assertEquals("$11.50", model.getValueAt(0, 2));
+        assertEquals(OrderStatus.PENDING, model.getValueAt(1, 3));
+
+        orders.get(1).cancelOrder();
+        assertEquals(OrderStatus.CANCELED, model.getValueAt(1, 3));
+        model.clear();
+        assertEquals(0, model.getRowCount());
+    }
+
+    @Test
+    void testMenuTableModelFollowsMenuChanges() throws Exception {
+        MenuTableModel[] model = new MenuTableModel[1];
+        List<Integer> eventTypes = new ArrayList<>();
+        SwingUtilities.invokeAndWait(() -> {
+            model[0] = new MenuTableModel(system);
+            model[0].addTableModelListener(e -> eventTypes.add(e.getType()));
+        });
+        assertEquals(5, model[0].getRowCount());
+
+        system.addItemToMenu("Tea", 1.25, "Beverages", true);
+        system.getMenuItem("Burger").setPrice(4.50);
+        system.removeMenuItem("Fries");
+        system.addItemToMenu("tea", 1.75, "Beverages", true);
+        SwingUtilities.invokeAndWait(() -> {
+        });
+
+        Map<String, Double> prices = new HashMap<>();
+        for (int row = 0; row < model[0].getRowCount(); row++) {
+            prices.put((String) model[0].getValueAt(row, 0), (Double) model[0].getValueAt(row, 2));
+        }
+        assertEquals(Map.of("Burger", 4.50, "Soda", 1.50, "Pizza", 8.00, "Coffee", 3.00, "tea", 1.75), prices);
+        assertTrue(eventTypes.contains(TableModelEvent.INSERT));
+        assertTrue(eventTypes.contains(TableModelEvent.UPDATE));
+        assertTrue(eventTypes.contains(TableModelEvent.DELETE));
+
+        model[0].close();
+        system.removeMenuItem("Soda");
+        SwingUtilities.invokeAndWait(() -> {
+        });
+        assertEquals(5, model[0].getRowCount());
+    }
+
+    @Test
+    void testGroupCommittedOrdersSurviveACrash(@TempDir File dir) throws Exception {
+        OperationLog log = new OperationLog(new File(dir, "byte_me.bin"));
+        ByteMeCanteenSystem live = log.recover();
+        live.orderJournal = new OrderJournal(dir);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<CompletableFuture<Order>>> placed = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            String customer = "group" + (i % 16);
+            placed.add(pool.submit(() -> live.createOrder(customer, List.of(new CartItem(live.getMenuItem("Soda"), 1)), null, live)));
+        }
+        for (Future<CompletableFuture<Order>> order : placed) {
+            order.get().get();
+        }
+        pool.shutdown();
+
+        // Once their futures complete, the orders are on disk without a snapshot or a clean close.
+        OperationLog afterCrash = new OperationLog(new File(dir, "byte_me.bin"));
+        ByteMeCanteenSystem recovered = afterCrash.recover();
+        assertEquals(400, recovered.getOrderCount(OrderStatus.PENDING));
+        assertEquals(400, live.metrics.getLatencies(CanteenMetrics.Operation.LOG_APPEND).getCount());
+        assertTrue(live.metrics.getLatencies(CanteenMetrics.Operation.LOG_COMMIT).getCount() <= 400);
+
+        log.close();
+        live.closeOrderJournal();
+        assertTrue(new File(dir, "group0.txt").length() > 0);
+        afterCrash.close();
+    }
+
+    @Test
+    void testOrderHistoryIsReadInOnFirstUse(@TempDir File dir) throws IOException {
+        system.orderJournal = new OrderJournal(dir);
+        cart.add(new CartItem(system.getMenuItem("Burger"), 2));
+        long lastWeek = System.currentTimeMillis() - 7 * 24 * 60 * 60 * 1000L;
+        for (int c = 0; c < 3; c++) {
+            system.customerAccounts.put("old" + c, "pw");
+            for (int i = 0; i < 4; i++) {
+                system.createOrder("old" + c, cart, "order " + i, system);
+            }
+            for (Order order : system.getOrderHistory("old" + c)) {
+                system.applyOrderStatus(order, OrderStatus.COMPLETED);
+                order.placedAt = lastWeek;
+            }
+        }
+        system.createOrder(loginId, cart, null, system);
+        File file = new File(dir, "byte_me.bin");
+        CanteenCodec.save(system, file);
+
+        // Only the customer with an order in the kitchen is read at load; the rest stay on disk
+        // but still count.
+        ByteMeCanteenSystem loaded = CanteenCodec.load(file);
+        assertEquals(Set.of(loginId), loaded.orderHistory.keySet());
+        assertEquals(12, loaded.getOrderCount(OrderStatus.COMPLETED));
+        assertEquals(13, loaded.metrics.getOrdersInHistory());
+        assertEquals(3, loaded.metrics.getHistoriesOnDisk());
+
+        long oldId = system.getOrderHistory("old0").get(1).getId();
+        Order stale = loaded.getOrder(oldId);
+        assertEquals("order 1", stale.getSpecialRequest());
+        assertTrue(loaded.loginCustomer("old1", "pw"));
+        assertTrue(loaded.orderHistory.containsKey("old1"));
+        assertEquals(system.getOrderHistory("old1").toString(), loaded.getOrderHistory("old1").toString());
+
+        // Over capacity, the least recently used history is dropped and read back when needed.
+        loaded.pagedHistory.setCapacity(4);
+        loaded.getOrderHistory("old2");
+        assertFalse(loaded.orderHistory.containsKey("old0"));
+        assertFalse(loaded.orderHistory.containsKey("old1"));
+        assertEquals(2, loaded.metrics.getHistoryEvictions());
+        assertTrue(stale.setStatus(OrderStatus.REFUNDED));
+        assertEquals(OrderStatus.REFUNDED, loaded.getOrder(oldId).getStatus());
+        assertEquals(1, loaded.getOrderCount(OrderStatus.REFUNDED));
+
+        // A changed history stays in memory; the next snapshot copies the untouched pages through.
+        loaded.pagedHistory.setCapacity(0);
+        loaded.getOrderHistory("old1");
+        assertTrue(loaded.orderHistory.containsKey("old0"));
+        CanteenCodec.save(loaded, file);
+        ByteMeCanteenSystem reloaded = CanteenCodec.load(file);
+        reloaded.orderJournal = system.orderJournal;
+        assertEquals(loaded.getOrderHistory("old0").toString(), reloaded.getOrderHistory("old0").toString());
+        assertEquals(system.getOrderHistory("old2").toString(), reloaded.getOrderHistory("old2").toString());
+        assertEquals(OrderStatus.REFUNDED, reloaded.getOrder(oldId).getStatus());
+        assertEquals("order 3", reloaded.getOrder("old1", system.getOrderHistory("old1").get(3).getId()).getSpecialRequest());
+        assertEquals(system.lastOrderId.get() + 1, reloaded.createOrder("a", cart, null, reloaded).join().getId());
+
+
+        // The owners table beside the snapshot is only extended: entries already there are left
+        // alone, so a value planted in the first one survives the next save.
+        File owners = OrderOwners.fileFor(file);
+        assertEquals(system.lastOrderId.get() * Integer.BYTES, owners.length());
+        try (RandomAccessFile table = new RandomAccessFile(owners, "rw")) {
+            table.writeInt(Integer.MAX_VALUE);
+        }
+        CanteenCodec.save(reloaded, file);
+        assertEquals(reloaded.lastOrderId.get() * Integer.BYTES, owners.length());
+        try (RandomAccessFile table = new RandomAccessFile(owners, "r")) {
+            assertEquals(Integer.MAX_VALUE, table.readInt());
+            table.seek(owners.length() - Integer.BYTES);
+            assertEquals(reloaded.orderOwners.number("a"), table.readInt());
+        }
+
+        loaded.closePagedHistory();
+        reloaded.closePagedHistory();
+
+        // A closed system has let go of its snapshot, so pages left on disk can no longer be read.
+        ByteMeCanteenSystem closed = CanteenCodec.load(file);
+        closed.closePagedHistory();
+        assertThrows(UncheckedIOException.class, () -> closed.getOrderHistory("old2"));
+        assertFalse(closed.orderHistory.containsKey("old2"));
+    }
+
+    @Test
+    void testOrderJournalAppendsAndCompactsPeriodically(@TempDir File dir) throws IOException {
+        system.orderJournal = new OrderJournal(dir);
+        cart.add(new CartItem(system.getMenuItem("Soda"), 1));
+        system.createOrder(loginId, cart, "line one\nline two", system);
+        system.createOrder(loginId, cart, "C:\\n", system);
+        system.closeOrderJournal();
+        List<String> lines = Files.readAllLines(new File(dir, loginId + ".txt").toPath());
+        assertEquals(3, lines.size());
+        assertEquals(OrderJournal.HEADER, lines.get(0));
+        assertTrue(lines.get(1).startsWith("Order #1: ") && lines.get(1).contains("line one\\nline two"));
+        assertTrue(lines.get(2).startsWith("Order #2: ") && lines.get(2).contains("C:\\\\n"));
+
+        // The reader undoes the escaping, and drops a record torn off mid-line.
+        StringBuilder view = new StringBuilder(OrderJournal.HEADER + "\n");
+        for (Order order : system.getOrderHistory(loginId)) {
+            view.append("Order #").append(order.getId()).append(": ").append(order).append('\n');
+        }
+        OrderJournal journal = new OrderJournal(dir);
+        assertEquals(view.toString(), journal.readTextView(loginId));
+        Files.writeString(new File(dir, loginId + ".txt").toPath(), "Order #3: torn", StandardOpenOption.APPEND);
+        assertEquals(view.toString(), journal.readTextView(loginId));
+        assertEquals(OrderJournal.EMPTY, journal.readTextView("nobody"));
+        journal.close();
+        Files.writeString(new File(dir, loginId + ".txt").toPath(), String.join("\n", lines) + "\n");
+
+        // A new session keeps appending; status changes reach the file at the next compaction,
+        // every COMPACTION_INTERVAL orders.
+        system.getOrderHistory(loginId).get(0).cancelOrder();
+        system.orderJournal = new OrderJournal(dir);
+        system.createOrder(loginId, cart, null, system);
+        system.closeOrderJournal();
+        lines = Files.readAllLines(new File(dir, loginId + ".txt").toPath());
+        assertEquals(4, lines.size());
+        assertFalse(lines.get(1).contains(OrderStatus.CANCELED.toString()));
+
+        system.orderJournal = new OrderJournal(dir);
+        while (system.getOrderHistory(loginId).size() < OrderJournal.COMPACTION_INTERVAL) {
+            system.createOrder(loginId, cart, null, system);
+        }
+        system.closeOrderJournal();
+        lines = Files.readAllLines(new File(dir, loginId + ".txt").toPath());
+        assertEquals(OrderJournal.COMPACTION_INTERVAL + 1, lines.size());
+        assertEquals(1, lines.stream().filter(OrderJournal.HEADER::equals).count());
+        assertTrue(lines.get(1).contains(OrderStatus.CANCELED.toString()));
+
+        // A customer whose file went missing gets it rewritten in full.
+        assertTrue(new File(dir, loginId + ".txt").delete());
+        system.orderJournal = new OrderJournal(dir);
+        system.createOrder(loginId, cart, null, system);
+        system.closeOrderJournal();
+        assertEquals(OrderJournal.COMPACTION_INTERVAL + 2, Files.readAllLines(new File(dir, loginId + ".txt").toPath()).size());
+    }
+
+    @Test
+    void testOperationLogRecoversAndCutsOffTornRecords(@TempDir File dir) throws IOException {
+        File snapshot = new File(dir, "byte_me.bin");
+        OperationLog log = new OperationLog(snapshot);
+        ByteMeCanteenSystem live = log.recover();
+        live.orderJournal = new OrderJournal(dir);
+        live.registerCustomer("carol", "pw");
+        live.addMenuItem(new FoodItem("Tea", 1.25, "Beverages", true));
+        List<CartItem> tea = List.of(new CartItem(live.getMenuItem("Tea"), 2));
+        live.createOrder("carol", tea, "hot", live);
+        live.getOrderHistory("carol").get(0).setStatus(OrderStatus.PREPARING);
+        // Records are written in order, so once the last one is on disk they all are.
+        live.createOrder("carol", tea, null, live).join();
+        File segment = new File(dir, "byte_me-000001.log");
+        long logged = segment.length();
+
+        // A crash without a snapshot: everything comes back from the log, and a partial length
+        // header at the end is cut off.
+        Files.write(segment.toPath(), new byte[]{0, 0}, StandardOpenOption.APPEND);
+        OperationLog afterCrash = new OperationLog(snapshot);
+        ByteMeCanteenSystem recovered = afterCrash.recover();
+        assertEquals(5, afterCrash.getReplayed());
+        assertEquals(logged, segment.length());
+        assertTrue(recovered.loginCustomer("carol", "pw"));
+        assertEquals(1.25, recovered.getMenuItem("Tea").price);
+        assertEquals(2, recovered.getOrderHistory("carol").size());
+        assertEquals(OrderStatus.PREPARING, recovered.getOrderHistory("carol").get(0).getStatus());
+
+        // A record whose checksum does not match ends the log there.
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(logged - 1);
+            int last = file.read();
+            file.seek(logged - 1);
+            file.write(last ^ 0xFF);
+        }
+        OperationLog afterCorruption = new OperationLog(snapshot);
+        ByteMeCanteenSystem truncated = afterCorruption.recover();
+        assertEquals(4, afterCorruption.getReplayed());
+        assertTrue(segment.length() < logged);
+        assertEquals(1, truncated.getOrderHistory("carol").size());
+
+        live.closeOrderJournal();
+        log.close();
+        afterCrash.close();
+        afterCorruption.close();
+    }
+
+    @Test
+    void testServerRunsSessionsSideBySideAndSurvivesDisconnects() throws Exception {
+        CanteenServer server = new CanteenServer(system, 0);
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        serving.start();
+        Socket first = till(server);
+        try (Socket second = till(server)) {
+            BufferedReader firstIn = tillInput(first);
+            BufferedReader secondIn = tillInput(second);
+            readUntil(firstIn, "3. Exit");
+            readUntil(secondIn, "3. Exit");
+            assertEquals(2, server.getActiveSessions());
+
+            tillOutput(first).print("1\n1\nalice\npw\n3\n");
+            readUntil(firstIn, "Registration successful");
+            readUntil(firstIn, "3. Exit");
+            // Hanging up in the middle of a menu ends only that session.
+            first.close();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.getActiveSessions() > 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, server.getActiveSessions());
+
+            tillOutput(second).print("1\n1\nbob\npw\n3\n3\n");
+            readUntil(secondIn, "Registration successful");
+            readUntil(secondIn, "Exiting the system...");
+            try (Socket third = till(server)) {
+                tillOutput(third).print("3\n");
+                readUntil(tillInput(third), "Exiting the system...");
+            }
+            assertEquals("pw", system.customerAccounts.get("alice"));
+            assertEquals("pw", system.customerAccounts.get("bob"));
+        } finally {
+            first.close();
+            server.close();
+            serving.join(5000);
+        }
+        assertFalse(serving.isAlive());
+    }
+
+    private static Socket till(CanteenServer server) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    private static BufferedReader tillInput(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static PrintStream tillOutput(Socket socket) throws IOException {
+        return new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+    }
+
+    private static void readUntil(BufferedReader in, String text) throws IOException {
+        StringBuilder seen = new StringBuilder();
+        for (String line; (line = in.readLine()) != null; ) {
+            seen.append(line).append('\n');
+            if (line.contains(text)) {
+                return;
+            }
+        }
+        fail("Expected \"" + text + "\" but the server sent:\n" + seen);
+    }
+
     @AfterEach
     void endUp(){
+        system.closeOrderJournal();
         system.customerAccounts.remove("a");
         system.customerAccounts.remove("hi4");
     }
@@ -0,0 +1,842 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Hand-written binary format for the canteen state, replacing ObjectOutputStream.
+//
+//   magic "BYTM", varint schema version
+//   string dictionary: varint count, then varint length + UTF-8 bytes per string
+//   item table: every distinct FoodItem (menu items and items only referenced from carts)
+//   body: accounts, menu, order history, log sequence (system) or per-customer carts (cart file)
+//
+// Version 4 replaced each item's reviews with its rating aggregates; the reviews themselves live in
+// the ReviewStore. Reviews read from older files stay in memory until ByteMeCanteenSystem.setReviewStore
+// moves them into the store.
+//
+// Version 5 writes each order's own lines (item name, quantity, unit price in cents) instead of
+// item table references; older orders take their prices from the item table.
+//
+// Version 6 adds each order's id. Orders read from older files are numbered when loaded.
+//
+// Version 7 writes order statuses as OrderStatus ordinals; older free-text statuses are migrated.
+//
+// Version 8 moves order history out of the body, so loading no longer reads every order:
+//
+//   magic, version, i64 body length
+//   body: string dictionary, item table, accounts, menu, page directory (per customer: login id,
+//         page offset, length, order count, flags), order counts by status, last order id, offset
+//         of the owners table, log sequence
+//   pages: per customer, a string dictionary of its own and the customer's orders
+//   owners table: i32 per order id, the directory index of the order's customer
+//
+// PagedOrderHistory reads the pages that load leaves on disk. Cart files keep the version 7 layout.
+//
+// Version 9 moves the owners table out of the file, into the OrderOwners table beside it, which
+// each snapshot only extends; the directory is in customer number order and the body no longer
+// holds the table's offset. Pages still on disk are copied into the next snapshot after
+// stateLock is released (see Image).
+//
+// Version 1 cart files hold the single cart that all customers used to share. It cannot be
+// attributed to anyone, so it is dropped when read.
+//
+// Strings are written as dictionary indexes (+1, 0 meaning null) and items as item table indexes,
+// so an item shared between the menu and many carts is written once.
+class CanteenCodec {
+    static final byte[] MAGIC = {'B', 'Y', 'T', 'M'};
+    static final int VERSION = 9;
+
+    private static final int AVAILABLE = 1;
+    private static final int PRICE_IN_CENTS = 2;
+    // Directory flag: the page is read at load. Set for customers with an order that can still
+    // change or that was placed within a day, which covers everything the live order index, today's
+    // sales and the popular items count.
+    private static final int RESIDENT = 1;
+    private static final long RESIDENT_MILLIS = PopularItemsTracker.DAY_MINUTES * 60_000L;
+
+    private CanteenCodec() {
+    }
+
+    // A snapshot as taken under stateLock: everything that can change is encoded then, while the
+    // pages still on disk, which cannot, are only referenced and copied in by writeTo. Owner
+    // entries past what the target's table holds are taken along the same way.
+    static final class Image {
+        private final byte[] head;
+        private final PagedOrderHistory paged;
+        private final List<PagedOrderHistory.Page> copies;
+        private final OrderOwners owners;
+        private final long ownersFrom;
+        // -2 where the owner is still in the loaded snapshot's table; null without a target file.
+        private final int[] ownerEntries;
+
+        private Image(byte[] head, PagedOrderHistory paged, List<PagedOrderHistory.Page> copies, OrderOwners owners, long ownersFrom, int[] ownerEntries) {
+            this.head = head;
+            this.paged = paged;
+            this.copies = copies;
+            this.owners = owners;
+            this.ownersFrom = ownersFrom;
+            this.ownerEntries = ownerEntries;
+        }
+
+        public long length() {
+            long length = head.length;
+            for (PagedOrderHistory.Page page : copies) {
+                length += page.length();
+            }
+            return length;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(head);
+            for (PagedOrderHistory.Page page : copies) {
+                out.write(paged.readPage(page));
+            }
+        }
+
+        byte[] toByteArray() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.toIntExact(length()));
+            writeTo(out);
+            return out.toByteArray();
+        }
+
+        void writeOwners(File snapshotFile) throws IOException {
+            if (ownerEntries == null || ownerEntries.length == 0) {
+                return;
+            }
+            if (paged != null) {
+                paged.readOwners(ownersFrom, ownerEntries);
+            }
+            for (int i = 0; i < ownerEntries.length; i++) {
+                if (ownerEntries[i] == -2) {
+                    ownerEntries[i] = -1;
+                }
+            }
+            owners.write(OrderOwners.fileFor(snapshotFile), ownersFrom, ownerEntries);
+        }
+    }
+
+    public static byte[] encode(ByteMeCanteenSystem system) {
+        try {
+            return capture(system, null).toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not copy order history", e);
+        }
+    }
+
+    // Takes stateLock's write lock (as OperationLog.snapshot already has), so the image does not
+    // see a customer's history in the middle of being read in or dropped. snapshotFile is where the
+    // image will be written, or null if it stays in memory.
+    static Image capture(ByteMeCanteenSystem system, File snapshotFile) {
+        system.stateLock.writeLock().lock();
+        try {
+            return captureLocked(system, snapshotFile);
+        } finally {
+            system.stateLock.writeLock().unlock();
+        }
+    }
+
+    private static Image captureLocked(ByteMeCanteenSystem system, File snapshotFile) {
+        PagedOrderHistory paged = system.pagedHistory;
+        Map<String, PagedOrderHistory.Page> unloaded = paged == null ? Map.of() : paged.getUnloaded();
+        OrderOwners owners = system.orderOwners;
+        if (owners == null) {
+            owners = new OrderOwners(new String[0], null, 0);
+            system.orderOwners = owners;
+        }
+        system.orderHistory.keySet().forEach(owners::number);
+        unloaded.keySet().forEach(owners::number);
+        List<String> customers = owners.getCustomers();
+
+        Tables tables = new Tables();
+        system.menu.forEach((name, item) -> {
+            tables.string(name);
+            tables.item(item);
+        });
+        system.customerAccounts.forEach((loginId, password) -> {
+            tables.string(loginId);
+            tables.string(password);
+        });
+        customers.forEach(tables::string);
+
+        // Pages encoded from memory come first; the ones copied from disk follow them.
+        long recent = System.currentTimeMillis() - RESIDENT_MILLIS;
+        Writer pages = new Writer();
+        long[] positions = new long[customers.size()];
+        int[] lengths = new int[customers.size()];
+        int[] counts = new int[customers.size()];
+        boolean[] resident = new boolean[customers.size()];
+        boolean[] copied = new boolean[customers.size()];
+        List<PagedOrderHistory.Page> copies = new ArrayList<>();
+        long copiedLength = 0;
+        for (int i = 0; i < customers.size(); i++) {
+            List<Order> orders = system.orderHistory.get(customers.get(i));
+            PagedOrderHistory.Page page = orders == null ? unloaded.get(customers.get(i)) : null;
+            if (page != null) {
+                positions[i] = copiedLength;
+                lengths[i] = page.length();
+                counts[i] = page.orders();
+                copied[i] = true;
+                copies.add(page);
+                copiedLength += page.length();
+                continue;
+            }
+            if (orders == null) {
+                orders = List.of();
+            }
+            for (Order order : orders) {
+                resident[i] |= !order.status.isTerminal() || order.placedAt >= recent;
+            }
+            positions[i] = pages.length;
+            writePage(pages, orders);
+            lengths[i] = (int) (pages.length - positions[i]);
+            counts[i] = orders.size();
+        }
+        Writer directory = new Writer();
+        directory.varint(customers.size());
+        for (int i = 0; i < customers.size(); i++) {
+            long position = copied[i] ? pages.length + positions[i] : positions[i];
+            writeDirectoryEntry(directory, tables, customers.get(i), position, lengths[i], counts[i], resident[i]);
+        }
+
+        long lastOrderId = Math.max(system.lastOrderId.get(), paged == null ? 0 : paged.getLastOrderId());
+        long ownersFrom = 0;
+        int[] ownerEntries = null;
+        if (snapshotFile != null) {
+            // Orders in memory are looked up now; the rest are read from disk with the pages.
+            ownersFrom = owners.getWritten(OrderOwners.fileFor(snapshotFile)) + 1;
+            ownerEntries = new int[(int) Math.max(0, lastOrderId - ownersFrom + 1)];
+            for (int i = 0; i < ownerEntries.length; i++) {
+                long id = ownersFrom + i;
+                Order order = system.ordersById.get(id);
+                if (order != null && order.loginId != null) {
+                    ownerEntries[i] = owners.number(order.loginId);
+                } else {
+                    ownerEntries[i] = paged != null && id <= paged.getLastOrderId() ? -2 : -1;
+                }
+            }
+        }
+
+        Writer body = new Writer();
+        tables.writeTables(body);
+        body.varint(system.customerAccounts.size());
+        system.customerAccounts.forEach((loginId, password) -> {
+            body.varint(tables.stringRef(loginId));
+            body.varint(tables.stringRef(password));
+        });
+        body.varint(system.menu.size());
+        system.menu.forEach((name, item) -> {
+            body.varint(tables.stringRef(name));
+            body.varint(tables.itemRef(item));
+        });
+        body.bytes(directory.toByteArray());
+        long[] statusCounts = system.getOrderCounts();
+        body.varint(statusCounts.length);
+        for (long count : statusCounts) {
+            body.varlong(count);
+        }
+        body.varlong(lastOrderId);
+        body.varlong(system.logSequence);
+
+        Writer out = new Writer();
+        out.bytes(MAGIC);
+        out.varint(VERSION);
+        out.i64(body.length);
+        out.bytes(body.toByteArray());
+        out.bytes(pages.toByteArray());
+        return new Image(out.toByteArray(), paged, copies, owners, ownersFrom, ownerEntries);
+    }
+
+    public static ByteMeCanteenSystem decode(byte[] data) throws IOException {
+        Reader in = new Reader(data);
+        int version = readVersion(in);
+        if (version >= 8) {
+            long pagesStart = in.i64();
+            pagesStart += in.position;
+            return decodePaged(in, version, (position, length) -> slice(data, position, length), pagesStart, null);
+        }
+        String[] strings = readStrings(in);
+        FoodItem[] items = readItems(in, strings, version);
+
+        ByteMeCanteenSystem system = new ByteMeCanteenSystem(false);
+        readAccountsAndMenu(in, strings, items, system);
+        int customers = in.varint();
+        for (int i = 0; i < customers; i++) {
+            String loginId = string(strings, in.varint());
+            int count = in.varint();
+            List<Order> orders = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                orders.add(readOrder(in, strings, items, version));
+            }
+            system.orderHistory.put(loginId, orders);
+        }
+        system.logSequence = in.varlong();
+        system.attach();
+        return system;
+    }
+
+    // A customer's orders as written on their page.
+    static List<Order> decodePage(byte[] page) throws IOException {
+        Reader in = new Reader(page);
+        String[] strings = readStrings(in);
+        int count = in.varint();
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(readOrder(in, strings, null, VERSION));
+        }
+        return orders;
+    }
+
+    // Reads a version 8 or 9 file from the directory on. Loading from snapshotFile, only resident
+    // pages are read now and the rest are left to a PagedOrderHistory; otherwise every page is read.
+    private static ByteMeCanteenSystem decodePaged(Reader in, int version, PagedOrderHistory.Source source, long pagesStart, File snapshotFile) throws IOException {
+        boolean lazy = snapshotFile != null;
+        String[] strings = readStrings(in);
+        FoodItem[] items = readItems(in, strings, VERSION);
+        ByteMeCanteenSystem system = new ByteMeCanteenSystem(false);
+        readAccountsAndMenu(in, strings, items, system);
+
+        int customers = in.varint();
+        String[] logins = new String[customers];
+        PagedOrderHistory.Page[] pages = new PagedOrderHistory.Page[customers];
+        boolean[] resident = new boolean[customers];
+        for (int i = 0; i < customers; i++) {
+            logins[i] = string(strings, in.varint());
+            pages[i] = new PagedOrderHistory.Page(pagesStart + in.varlong(), in.varint(), in.varint());
+            resident[i] = (in.u8() & RESIDENT) != 0;
+        }
+        long[] statusCounts = new long[OrderStatus.values().length];
+        int statuses = in.varint();
+        for (int i = 0; i < statuses; i++) {
+            long count = in.varlong();
+            if (i < statusCounts.length) {
+                statusCounts[i] = count;
+            }
+        }
+        long lastOrderId = in.varlong();
+        long ownersPosition = version == 8 ? pagesStart + in.varlong() : 0;
+        system.logSequence = in.varlong();
+
+        // A version 9 snapshot's owners table is only used if it covers the snapshot; without it,
+        // orders still on disk are found once their customer's history is read in.
+        File ownersFile = version >= 9 && lazy ? OrderOwners.fileFor(snapshotFile) : null;
+        boolean ownersKept = ownersFile != null && lastOrderId > 0 && ownersFile.length() >= lastOrderId * Integer.BYTES;
+        system.orderOwners = new OrderOwners(logins, ownersKept ? ownersFile : null, ownersKept ? lastOrderId : 0);
+
+        boolean pagesLeft = false;
+        for (int i = 0; i < customers; i++) {
+            pagesLeft |= lazy && !resident[i];
+        }
+        PagedOrderHistory.Source owners = source;
+        if (version >= 9 && pagesLeft) {
+            owners = ownersKept ? open(ownersFile) : (position, length) -> {
+                byte[] none = new byte[length];
+                Arrays.fill(none, (byte) -1);
+                return none;
+            };
+        }
+        PagedOrderHistory paged = new PagedOrderHistory(source, owners, logins, ownersPosition, lastOrderId, statusCounts);
+        for (int i = 0; i < customers; i++) {
+            if (lazy && !resident[i]) {
+                paged.add(logins[i], pages[i]);
+            } else {
+                system.orderHistory.put(logins[i], decodePage(source.read(pages[i].position(), pages[i].length())));
+            }
+        }
+        if (pagesLeft) {
+            system.pagedHistory = paged;
+        }
+        system.attach();
+        return system;
+    }
+
+    public static byte[] encodeCarts(Map<String, Cart> carts) {
+        Tables tables = new Tables();
+        carts.forEach((loginId, cart) -> {
+            tables.string(loginId);
+            cart.getItems().forEach(cartItem -> tables.item(cartItem.item));
+        });
+        Writer out = tables.writeHeader();
+        out.varint(carts.size());
+        carts.forEach((loginId, cart) -> {
+            out.varint(tables.stringRef(loginId));
+            writeLines(out, tables, cart.getItems());
+        });
+        return out.toByteArray();
+    }
+
+    public static Map<String, Cart> decodeCarts(byte[] data) throws IOException {
+        Reader in = new Reader(data);
+        int version = readVersion(in);
+        String[] strings = readStrings(in);
+        FoodItem[] items = readItems(in, strings, version);
+        HashMap<String, Cart> carts = new HashMap<>();
+        if (version == 1) {
+            return carts;
+        }
+        int count = in.varint();
+        for (int i = 0; i < count; i++) {
+            String loginId = string(strings, in.varint());
+            Cart cart = new Cart();
+            for (CartItem line : readLines(in, items)) {
+                cart.add(line.item, line.quantity);
+            }
+            carts.put(loginId, cart);
+        }
+        return carts;
+    }
+
+    public static void save(ByteMeCanteenSystem system, File file) throws IOException {
+        write(capture(system, file), file);
+    }
+
+    // Adds the image's owner entries to the table beside file, then writes a new file and renames
+    // it over the old one, which a loaded system may still be reading order history pages from.
+    public static void write(Image image, File file) throws IOException {
+        image.writeOwners(file);
+        File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            image.writeTo(out);
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Version 8 and later files are read up to the end of the page directory, plus the resident
+    // pages; the file (and its owners table) is kept open if any customer's history was left on
+    // disk, until the system's closePagedHistory.
+    public static ByteMeCanteenSystem load(File file) throws IOException {
+        file = file.getAbsoluteFile();
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        boolean keepOpen = false;
+        try {
+            PagedOrderHistory.Source source = source(channel);
+            Reader preamble = new Reader(source.read(0, (int) Math.min(channel.size(), MAGIC.length + 5 + Long.BYTES)));
+            int version = readVersion(preamble);
+            if (version < 8) {
+                return decode(Files.readAllBytes(file.toPath()));
+            }
+            long bodyLength = preamble.i64();
+            long bodyStart = preamble.position;
+            Reader in = new Reader(source.read(bodyStart, Math.toIntExact(bodyLength)));
+            ByteMeCanteenSystem system = decodePaged(in, version, source, bodyStart + bodyLength, file);
+            keepOpen = system.pagedHistory != null;
+            return system;
+        } finally {
+            if (!keepOpen) {
+                channel.close();
+            }
+        }
+    }
+
+    // Converts a byte_me.ser / byte_me_cart.ser file written by ObjectOutputStream. The reviews in
+    // byte_me.ser are moved into the review store.
+    public static void convert(File serFile, File binFile, ReviewStore reviewStore) throws IOException {
+        Object legacy;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(serFile)))) {
+            legacy = in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        if (legacy instanceof ByteMeCanteenSystem system) {
+            system.setReviewStore(reviewStore);
+            save(system, binFile);
+        } else if (legacy instanceof List) {
+            Files.write(binFile.toPath(), encodeCarts(new HashMap<>()));
+        } else {
+            throw new IOException("Unsupported object in " + serFile + ": " + legacy.getClass().getName());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.out.println("Usage: java CanteenCodec <file.ser> <file.bin> [review directory]");
+            return;
+        }
+        convert(new File(args[0]), new File(args[1]), new ReviewStore(new File(args.length > 2 ? args[2] : "reviews")));
+        System.out.println("Converted " + args[0] + " to " + args[1]);
+    }
+
+    private static void readAccountsAndMenu(Reader in, String[] strings, FoodItem[] items, ByteMeCanteenSystem system) throws IOException {
+        int accounts = in.varint();
+        for (int i = 0; i < accounts; i++) {
+            system.customerAccounts.put(string(strings, in.varint()), string(strings, in.varint()));
+        }
+        int menuSize = in.varint();
+        for (int i = 0; i < menuSize; i++) {
+            system.menu.put(string(strings, in.varint()), items[in.varint()]);
+        }
+    }
+
+    private static void writeDirectoryEntry(Writer out, Tables tables, String loginId, long position, int length, int orders, boolean resident) {
+        out.varint(tables.stringRef(loginId));
+        out.varlong(position);
+        out.varint(length);
+        out.varint(orders);
+        out.u8(resident ? RESIDENT : 0);
+    }
+
+    // A page carries its own string dictionary, so it can be read, or copied into the next
+    // snapshot, without the rest of the file.
+    private static void writePage(Writer out, List<Order> orders) {
+        Tables tables = new Tables();
+        for (Order order : orders) {
+            tables.string(order.specialRequest);
+            for (String itemName : order.itemNames) {
+                tables.string(itemName);
+            }
+        }
+        tables.writeStrings(out);
+        out.varint(orders.size());
+        for (Order order : orders) {
+            out.varint(order.status.ordinal());
+            out.varint(tables.stringRef(order.specialRequest));
+            out.varlong(order.placedAt);
+            out.varlong(order.id);
+            out.varint(order.getLineCount());
+            for (int line = 0; line < order.getLineCount(); line++) {
+                out.varint(tables.stringRef(order.getItemName(line)));
+                out.varint(zigzag(order.getQuantity(line)));
+                out.varlong(zigzag(order.getUnitPriceCents(line)));
+            }
+        }
+    }
+
+    private static Order readOrder(Reader in, String[] strings, FoodItem[] items, int version) throws IOException {
+        OrderStatus status = version >= 7 ? OrderStatus.ofOrdinal(in.varint()) : OrderStatus.migrate(string(strings, in.varint()));
+        String specialRequest = string(strings, in.varint());
+        long placedAt = version >= 3 ? in.varlong() : 0;
+        long id = version >= 6 ? in.varlong() : 0;
+        Order order;
+        if (version >= 5) {
+            int lines = in.varint();
+            String[] names = new String[lines];
+            int[] quantities = new int[lines];
+            long[] cents = new long[lines];
+            for (int line = 0; line < lines; line++) {
+                names[line] = string(strings, in.varint());
+                quantities[line] = unzigzag(in.varint());
+                cents[line] = unzigzag(in.varlong());
+            }
+            order = new Order(names, quantities, cents, specialRequest);
+        } else {
+            order = new Order(readLines(in, items), specialRequest);
+        }
+        order.status = status;
+        order.placedAt = placedAt;
+        order.id = id;
+        return order;
+    }
+
+    private static PagedOrderHistory.Source open(File file) throws IOException {
+        return source(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    }
+
+    private static PagedOrderHistory.Source source(FileChannel channel) {
+        return new PagedOrderHistory.Source() {
+            @Override
+            public byte[] read(long position, int length) throws IOException {
+                return CanteenCodec.read(channel, position, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated ByteMe data file");
+            }
+        }
+        return buffer.array();
+    }
+
+    private static byte[] slice(byte[] data, long position, int length) throws IOException {
+        if (position < 0 || position + length > data.length) {
+            throw new EOFException("Truncated ByteMe data file");
+        }
+        return Arrays.copyOfRange(data, (int) position, (int) position + length);
+    }
+
+    private static void writeLines(Writer out, Tables tables, List<CartItem> lines) {
+        out.varint(lines.size());
+        for (CartItem cartItem : lines) {
+            out.varint(tables.itemRef(cartItem.item));
+            out.varint(zigzag(cartItem.quantity));
+        }
+    }
+
+    private static List<CartItem> readLines(Reader in, FoodItem[] items) throws IOException {
+        int count = in.varint();
+        List<CartItem> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            FoodItem item = items[in.varint()];
+            lines.add(new CartItem(item, unzigzag(in.varint())));
+        }
+        return lines;
+    }
+
+    private static int readVersion(Reader in) throws IOException {
+        for (byte b : MAGIC) {
+            if (in.u8() != b) {
+                throw new IOException("Not a ByteMe data file");
+            }
+        }
+        int version = in.varint();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported schema version " + version);
+        }
+        return version;
+    }
+
+    private static String[] readStrings(Reader in) throws IOException {
+        String[] strings = new String[in.varint()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.utf8();
+        }
+        return strings;
+    }
+
+    private static FoodItem[] readItems(Reader in, String[] strings, int version) throws IOException {
+        FoodItem[] items = new FoodItem[in.varint()];
+        for (int i = 0; i < items.length; i++) {
+            String name = string(strings, in.varint());
+            String category = string(strings, in.varint());
+            int flags = in.u8();
+            double price = (flags & PRICE_IN_CENTS) != 0 ? unzigzag(in.varlong()) / 100.0 : Double.longBitsToDouble(in.i64());
+            FoodItem item = new FoodItem(name, price, category, (flags & AVAILABLE) != 0);
+            if (version >= 4) {
+                long ratingSum = unzigzag(in.varlong());
+                int[] histogram = new int[5];
+                for (int j = 0; j < histogram.length; j++) {
+                    histogram[j] = in.varint();
+                }
+                item.reviews = null;
+                item.restoreRatings(ratingSum, histogram);
+            } else {
+                int reviews = in.varint();
+                for (int j = 0; j < reviews; j++) {
+                    String customerName = string(strings, in.varint());
+                    String reviewText = string(strings, in.varint());
+                    int rating = unzigzag(in.varint());
+                    item.appendReview(new Review(customerName, reviewText, rating, new Date(unzigzag(in.varlong()))), null);
+                }
+            }
+            items[i] = item;
+        }
+        return items;
+    }
+
+    private static String string(String[] strings, int ref) {
+        return ref == 0 ? null : strings[ref - 1];
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // String dictionary and item table collected in a first pass over the graph.
+    private static class Tables {
+        final LinkedHashMap<String, Integer> strings = new LinkedHashMap<>();
+        final IdentityHashMap<FoodItem, Integer> itemRefs = new IdentityHashMap<>();
+        final List<FoodItem> items = new ArrayList<>();
+
+        void string(String value) {
+            if (value != null) {
+                strings.putIfAbsent(value, strings.size() + 1);
+            }
+        }
+
+        void item(FoodItem item) {
+            if (itemRefs.putIfAbsent(item, items.size()) == null) {
+                items.add(item);
+                string(item.name);
+                string(item.category);
+            }
+        }
+
+        int stringRef(String value) {
+            return value == null ? 0 : strings.get(value);
+        }
+
+        int itemRef(FoodItem item) {
+            return itemRefs.get(item);
+        }
+
+        Writer writeHeader() {
+            Writer out = new Writer();
+            out.bytes(MAGIC);
+            out.varint(VERSION);
+            writeTables(out);
+            return out;
+        }
+
+        void writeStrings(Writer out) {
+            out.varint(strings.size());
+            strings.keySet().forEach(out::utf8);
+        }
+
+        void writeTables(Writer out) {
+            writeStrings(out);
+            out.varint(items.size());
+            for (FoodItem item : items) {
+                out.varint(stringRef(item.name));
+                out.varint(stringRef(item.category));
+                double cents = item.price * 100;
+                boolean inCents = cents == Math.rint(cents) && Math.abs(cents) < 1L << 52;
+                out.u8((item.available ? AVAILABLE : 0) | (inCents ? PRICE_IN_CENTS : 0));
+                if (inCents) {
+                    out.varlong(zigzag((long) cents));
+                } else {
+                    out.i64(Double.doubleToLongBits(item.price));
+                }
+                out.varlong(zigzag(item.getRatingSum()));
+                for (int count : item.getRatingHistogram()) {
+                    out.varint(count);
+                }
+            }
+        }
+    }
+
+    private static class Writer {
+        private byte[] buffer = new byte[4096];
+        private int length;
+
+        private void ensure(int extra) {
+            if (length + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+
+        void u8(int value) {
+            ensure(1);
+            buffer[length++] = (byte) value;
+        }
+
+        void bytes(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, buffer, length, value.length);
+            length += value.length;
+        }
+
+        void varint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        void varlong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        void i32(int value) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buffer[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        void i64(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        void utf8(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            bytes(bytes);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    private static class Reader {
+        private final byte[] data;
+        private int position;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int u8() throws IOException {
+            if (position >= data.length) {
+                throw new EOFException("Truncated ByteMe data file");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        int varint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = u8();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        long varlong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = u8();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        long i64() throws IOException {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | u8();
+            }
+            return value;
+        }
+
+        String utf8() throws IOException {
+            int length = varint();
+            if (length < 0 || position + length > data.length) {
+                throw new EOFException("Truncated ByteMe data file");
+            }
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Flight Recorder events for the order lifecycle, so a slow checkout can be lined up against GC
+// and I/O in the same recording. Each event is timed from begin() to commit(). Callers set the
+// fields only once shouldCommit() says a recording wants the event, so with no recording running an
+// event costs little more than its (usually scalar-replaced) allocation.
+final class CanteenEvents {
+    private CanteenEvents() {
+    }
+
+    @Name("byteme.CartAdd")
+    @Label("Cart Add")
+    @Category({"Byte Me", "Orders"})
+    static class CartAdd extends Event {
+        @Label("Login Id")
+        String loginId;
+
+        @Label("Item")
+        String itemName;
+
+        @Label("Quantity")
+        int quantity;
+
+        @Label("Amount (cents)")
+        long amountCents;
+    }
+
+    @Name("byteme.Checkout")
+    @Label("Checkout")
+    @Description("Placing the order once payment has been taken, or a failed payment")
+    @Category({"Byte Me", "Orders"})
+    static class Checkout extends Event {
+        @Label("Login Id")
+        String loginId;
+
+        @Label("Lines")
+        int lines;
+
+        @Label("Items")
+        int items;
+
+        @Label("Amount (cents)")
+        long amountCents;
+
+        @Label("Payment Method")
+        String paymentMethod;
+
+        @Label("Paid")
+        boolean paid;
+    }
+
+    @Name("byteme.CreateOrder")
+    @Label("Create Order")
+    @Category({"Byte Me", "Orders"})
+    static class CreateOrder extends Event {
+        @Label("Login Id")
+        String loginId;
+
+        @Label("Order Id")
+        long orderId;
+
+        @Label("Lines")
+        int lines;
+
+        @Label("Items")
+        int items;
+
+        @Label("Amount (cents)")
+        long amountCents;
+    }
+
+    @Name("byteme.OrderStatusChange")
+    @Label("Order Status Change")
+    @Description("An order status update, cancellation or refund, including ones refused as invalid transitions")
+    @Category({"Byte Me", "Orders"})
+    static class OrderStatusChange extends Event {
+        @Label("Login Id")
+        String loginId;
+
+        @Label("Order Id")
+        long orderId;
+
+        @Label("From")
+        String from;
+
+        @Label("To")
+        String to;
+
+        @Label("Accepted")
+        boolean accepted;
+    }
+
+    @Name("byteme.Refund")
+    @Label("Refund")
+    @Category({"Byte Me", "Orders"})
+    static class Refund extends Event {
+        @Label("Login Id")
+        String loginId;
+
+        @Label("Order Id")
+        long orderId;
+
+        @Label("Amount (cents)")
+        long amountCents;
+
+        @Label("Reason")
+        String reason;
+
+        @Label("Refunded")
+        boolean refunded;
+    }
+
+    @Name("byteme.PersistenceFlush")
+    @Label("Persistence Flush")
+    @Description("A write of canteen data to disk")
+    @Category({"Byte Me", "Persistence"})
+    static class PersistenceFlush extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Records")
+        @Description("Records written together by a group commit; 0 for single writes")
+        int records;
+    }
+
+    static int itemCount(Order order) {
+        int items = 0;
+        for (int i = 0; i < order.getLineCount(); i++) {
+            items += order.getQuantity(i);
+        }
+        return items;
+    }
+}
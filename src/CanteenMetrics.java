@@ -0,0 +1,202 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+// Latency histograms for a ByteMeCanteenSystem's core operations, plus gauges read from the system
+// when asked for. Recording costs two nanoTime calls and a few uncontended atomic adds, so it stays
+// on in production; register() publishes it on the platform MBean server for jconsole and the like.
+class CanteenMetrics implements CanteenMetricsMXBean {
+    static final String OBJECT_NAME = "byteme:type=CanteenMetrics";
+
+    enum Operation {
+        CREATE_ORDER("createOrder"),
+        CHECKOUT("checkout"),
+        CHANGE_ORDER_STATUS("changeOrderStatus"),
+        SEARCH_MENU("searchMenu"),
+        FILTER_MENU("filterMenuByCategory"),
+        SORT_MENU("sortMenuByPrice"),
+        PENDING_ORDERS("getPendingOrders"),
+        JOURNAL_APPEND("journalAppend"),
+        LOG_APPEND("logAppend"),
+        LOG_COMMIT("logCommit"),
+        SNAPSHOT("snapshot"),
+        SAVE("save"),
+        LOAD("load");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final ByteMeCanteenSystem system;
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+
+    CanteenMetrics(ByteMeCanteenSystem system) {
+        this.system = system;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    // Records the time since startNanos, a System.nanoTime() reading taken when the operation began.
+    public void record(Operation operation, long startNanos) {
+        latencies[operation.ordinal()].recordSince(startNanos);
+    }
+
+    public LatencyHistogram getLatencies(Operation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    // Publishes these metrics as byteme:type=CanteenMetrics, replacing whatever system registered
+    // under that name before.
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            System.err.println("Error registering metrics: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Operation operation : OPERATIONS) {
+            counts.put(operation.label, getLatencies(operation).getCount());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMicros() {
+        return latencyMicros(LatencyHistogram::getMean);
+    }
+
+    @Override
+    public Map<String, Double> getP50LatencyMicros() {
+        return latencyMicros(histogram -> histogram.getValueAtPercentile(50));
+    }
+
+    @Override
+    public Map<String, Double> getP99LatencyMicros() {
+        return latencyMicros(histogram -> histogram.getValueAtPercentile(99));
+    }
+
+    @Override
+    public Map<String, Double> getP999LatencyMicros() {
+        return latencyMicros(histogram -> histogram.getValueAtPercentile(99.9));
+    }
+
+    @Override
+    public Map<String, Double> getMaxLatencyMicros() {
+        return latencyMicros(LatencyHistogram::getMax);
+    }
+
+    @Override
+    public long getPendingQueueDepth() {
+        return system.getOrderCount(OrderStatus.PENDING);
+    }
+
+    @Override
+    public int getPersistenceQueueDepth() {
+        OperationLog operationLog = system.operationLog;
+        OrderJournal orderJournal = system.orderJournal;
+        return (operationLog == null ? 0 : operationLog.getQueued()) + (orderJournal == null ? 0 : orderJournal.getQueued());
+    }
+
+    @Override
+    public Map<String, Long> getOrderCountsByStatus() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (OrderStatus status : OrderStatus.values()) {
+            counts.put(status.getLabel(), system.getOrderCount(status));
+        }
+        return counts;
+    }
+
+    @Override
+    public int getCustomersWithOrders() {
+        PagedOrderHistory paged = system.pagedHistory;
+        return system.orderHistory.size() + (paged == null ? 0 : paged.getUnloaded().size());
+    }
+
+    // History sizes are read without the customers' locks, so under load they are approximate.
+    @Override
+    public long getOrdersInHistory() {
+        long orders = 0;
+        for (List<Order> history : system.orderHistory.values()) {
+            orders += history.size();
+        }
+        PagedOrderHistory paged = system.pagedHistory;
+        if (paged != null) {
+            for (PagedOrderHistory.Page page : paged.getUnloaded().values()) {
+                orders += page.orders();
+            }
+        }
+        return orders;
+    }
+
+    @Override
+    public int getLargestOrderHistory() {
+        int largest = 0;
+        for (List<Order> history : system.orderHistory.values()) {
+            largest = Math.max(largest, history.size());
+        }
+        PagedOrderHistory paged = system.pagedHistory;
+        if (paged != null) {
+            for (PagedOrderHistory.Page page : paged.getUnloaded().values()) {
+                largest = Math.max(largest, page.orders());
+            }
+        }
+        return largest;
+    }
+
+    @Override
+    public int getHistoriesOnDisk() {
+        PagedOrderHistory paged = system.pagedHistory;
+        return paged == null ? 0 : paged.getUnloaded().size();
+    }
+
+    @Override
+    public long getHistoryPageIns() {
+        PagedOrderHistory paged = system.pagedHistory;
+        return paged == null ? 0 : paged.getPageIns();
+    }
+
+    @Override
+    public long getHistoryEvictions() {
+        PagedOrderHistory paged = system.pagedHistory;
+        return paged == null ? 0 : paged.getEvictions();
+    }
+
+    @Override
+    public void resetLatencies() {
+        for (LatencyHistogram histogram : latencies) {
+            histogram.reset();
+        }
+    }
+
+    private Map<String, Double> latencyMicros(ToDoubleFunction<LatencyHistogram> nanos) {
+        Map<String, Double> micros = new LinkedHashMap<>();
+        for (Operation operation : OPERATIONS) {
+            micros.put(operation.label, nanos.applyAsDouble(getLatencies(operation)) / 1000);
+        }
+        return micros;
+    }
+}
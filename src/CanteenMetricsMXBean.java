@@ -0,0 +1,41 @@
+import java.util.Map;
+
+// What CanteenMetrics publishes over JMX (as byteme:type=CanteenMetrics). Latency maps are keyed by
+// operation name (createOrder, checkout, save, ...) and are in microseconds.
+public interface CanteenMetricsMXBean {
+    Map<String, Long> getOperationCounts();
+
+    Map<String, Double> getMeanLatencyMicros();
+
+    Map<String, Double> getP50LatencyMicros();
+
+    Map<String, Double> getP99LatencyMicros();
+
+    Map<String, Double> getP999LatencyMicros();
+
+    Map<String, Double> getMaxLatencyMicros();
+
+    long getPendingQueueDepth();
+
+    // Operation log and order journal writes queued but not yet written.
+    int getPersistenceQueueDepth();
+
+    Map<String, Long> getOrderCountsByStatus();
+
+    int getCustomersWithOrders();
+
+    long getOrdersInHistory();
+
+    int getLargestOrderHistory();
+
+    // Customers whose order history is still only on disk, and how often histories have been read
+    // in from there and dropped again (see PagedOrderHistory).
+    int getHistoriesOnDisk();
+
+    long getHistoryPageIns();
+
+    long getHistoryEvictions();
+
+    // Clears the latency histograms (and with them the operation counts).
+    void resetLatencies();
+}
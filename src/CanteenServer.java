@@ -0,0 +1,102 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Serves the console menus to many tills at once over a local socket, one virtual thread per
+// connection. The protocol is the console's: the till sends one answer per line and reads back
+// exactly what a console user would see. A session ends at "3. Exit" or when the till disconnects.
+class CanteenServer {
+    static final int DEFAULT_PORT = 7070;
+
+    private final ByteMeCanteenSystem system;
+    private final ServerSocket serverSocket;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+
+    public CanteenServer(ByteMeCanteenSystem system, int port) throws IOException {
+        this.system = system;
+        this.serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    // Accepts connections until the server socket is closed.
+    public void serve() throws IOException {
+        System.out.println("Byte Me server listening on port " + getPort());
+        try (ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (!serverSocket.isClosed()) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    if (serverSocket.isClosed()) {
+                        break;
+                    }
+                    throw e;
+                }
+                sessions.submit(() -> session(socket));
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void session(Socket socket) {
+        activeSessions.incrementAndGet();
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), false, StandardCharsets.UTF_8);
+            Scanner scanner = new Scanner(new FlushingInputStream(socket.getInputStream(), out), StandardCharsets.UTF_8);
+            SessionIO.bind(out);
+            try {
+                ByteMe.runSession(scanner, system);
+            } catch (NoSuchElementException e) {
+                // The till disconnected or sent something other than the number a menu asked for.
+            } finally {
+                SessionIO.unbind();
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Session error: " + e.getMessage());
+        } finally {
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    // Flushes the session's pending output before blocking for the till's next answer, so prompts
+    // are sent as one write per exchange instead of one write per print call.
+    private static class FlushingInputStream extends FilterInputStream {
+        private final PrintStream out;
+
+        FlushingInputStream(InputStream in, PrintStream out) {
+            super(in);
+            this.out = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            out.flush();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            out.flush();
+            return super.read(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+// A persistence stage: callers hand records to a bounded queue and go on, and one writer thread
+// takes whatever has queued up since its last write and writes it as a group, so a busy system makes
+// one write (and one force) per group instead of one per record. submit() returns a future that
+// completes once the record's group has been written; callers that need durability wait on it,
+// the rest ignore it. When the queue is full submit() blocks, so a slow disk slows callers down
+// instead of letting the backlog grow without bound.
+class GroupCommitQueue<T> implements Closeable {
+    static final int MAX_GROUP = 1024;
+
+    interface GroupWriter<T> {
+        // Writes the records, oldest first; if it throws, every record in the group fails.
+        void write(List<T> group) throws IOException;
+    }
+
+    private record Pending<T>(T record, CompletableFuture<Void> written) {
+    }
+
+    private final String name;
+    private final GroupWriter<T> writer;
+    private final ArrayBlockingQueue<Pending<T>> queue;
+    private final Thread thread;
+    private final Pending<T> stop = new Pending<>(null, new CompletableFuture<>());
+    private volatile boolean closed;
+
+    public GroupCommitQueue(String name, int capacity, GroupWriter<T> writer) {
+        this.name = name;
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public CompletableFuture<Void> submit(T record) {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        if (closed) {
+            written.completeExceptionally(new IOException(name + " is closed"));
+            return written;
+        }
+        try {
+            queue.put(new Pending<>(record, written));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            written.completeExceptionally(e);
+        }
+        return written;
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    // Writes everything already submitted, then stops the writer thread.
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(stop);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Pending<T>> group = new ArrayList<>(MAX_GROUP);
+        List<T> records = new ArrayList<>(MAX_GROUP);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(group, MAX_GROUP - 1);
+            for (Pending<T> pending : group) {
+                if (pending == stop) {
+                    stopping = true;
+                } else {
+                    records.add(pending.record());
+                }
+            }
+            IOException failure = null;
+            if (!records.isEmpty()) {
+                try {
+                    writer.write(records);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error writing to " + name + ": " + e.getMessage());
+                    failure = e instanceof IOException io ? io : new IOException(e);
+                }
+            }
+            for (Pending<T> pending : group) {
+                if (failure == null) {
+                    pending.written().complete(null);
+                } else {
+                    pending.written().completeExceptionally(failure);
+                }
+            }
+            group.clear();
+            records.clear();
+        }
+        // Anything that raced close() in behind the stop marker will not be written.
+        for (Pending<T> pending; (pending = queue.poll()) != null; ) {
+            pending.written().completeExceptionally(new IOException(name + " is closed"));
+        }
+    }
+}
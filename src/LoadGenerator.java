@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Replays scripted customer sessions against one ByteMeCanteenSystem from many threads, the way
+// ByteMeTest drives the menus with scripted Scanner input, and reports orders/sec and latency
+// percentiles per operation. Each customer registers in their first session; every session logs
+// in, browses, fills the cart and usually checks out, sometimes looking at or repeating an
+// earlier order. The canteen runs with its operation log, order journals and reviews in a temp
+// directory, so durability costs are part of what is measured. Run with:
+//
+//   java -cp core/target/classes LoadGenerator [customers] [sessions per customer] [threads]
+class LoadGenerator {
+    enum Operation { REGISTER, LOGIN, BROWSE, ADD_TO_CART, CHECKOUT, ORDER_HISTORY, REORDER }
+
+    private static final String PASSWORD = "password";
+    private static final String[] CATEGORIES = {"Snacks", "Beverages", "Meals"};
+    private static final String[] WORDS = {"Paneer", "Masala", "Dosa", "Chai", "Cold", "Coffee", "Veg", "Burger",
+            "Tikka", "Roll", "Aloo", "Soda", "Fries", "Pizza", "Wrap", "Lassi"};
+    private static final String[] KEYWORDS = {"dosa", "cold coffee", "ur", "tikka roll", "pizza", "xyz"};
+    private static final int MENU_SIZE = 50;
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private final ByteMeCanteenSystem system;
+    private final List<String> orderableItems = new ArrayList<>();
+    private final EnumMap<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final AtomicLong ordersPlaced = new AtomicLong();
+    private final AtomicLong sessionsRun = new AtomicLong();
+
+    LoadGenerator(ByteMeCanteenSystem system) {
+        this.system = system;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+        Random random = new Random(42);
+        for (int i = system.menu.size(); i < MENU_SIZE; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            system.addMenuItem(new FoodItem(name, 1 + random.nextInt(1000) / 100.0, CATEGORIES[i % CATEGORIES.length], random.nextInt(10) > 0));
+        }
+        system.menu.values().stream().filter(item -> item.available).forEach(item -> orderableItems.add(item.getName()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 3) {
+            System.out.println("Usage: java LoadGenerator [customers] [sessions per customer] [threads]");
+            return;
+        }
+        int customers = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Path directory = Files.createTempDirectory("byteme-load");
+        OperationLog operationLog = new OperationLog(directory.resolve("byte_me.bin").toFile());
+        ByteMeCanteenSystem system = operationLog.recover();
+        try {
+            system.orderJournal = new OrderJournal(directory.toFile());
+            system.setReviewStore(new ReviewStore(directory.resolve("reviews").toFile()));
+            LoadGenerator generator = new LoadGenerator(system);
+
+            // A short run first, so the numbers below are not mostly the JIT warming up.
+            generator.run("warmup-", Math.min(customers, 200), sessions, threads);
+            generator.reset();
+            long elapsed = generator.run("load-", customers, sessions, threads);
+            generator.report(customers, sessions, threads, elapsed);
+        } finally {
+            operationLog.close();
+            system.closeOrderJournal();
+            deleteRecursively(directory);
+        }
+    }
+
+    // Runs every customer's sessions, in order, on a pool of the given size; returns the wall time
+    // in nanoseconds.
+    long run(String loginPrefix, int customers, int sessionsPerCustomer, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> customerRuns = new ArrayList<>(customers);
+        long start = System.nanoTime();
+        for (int c = 0; c < customers; c++) {
+            String loginId = loginPrefix + c;
+            Random random = new Random(c);
+            customerRuns.add(pool.submit(() -> {
+                SessionIO.bind(DISCARD);
+                try {
+                    for (int s = 0; s < sessionsPerCustomer; s++) {
+                        session(loginId, s == 0, random);
+                    }
+                } finally {
+                    SessionIO.unbind();
+                }
+                return null;
+            }));
+        }
+        int failed = 0;
+        for (Future<?> customerRun : customerRuns) {
+            try {
+                customerRun.get();
+            } catch (ExecutionException e) {
+                if (failed++ == 0) {
+                    System.err.println("Session failed: " + e.getCause());
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        if (failed > 0) {
+            System.err.println(failed + " of " + customers + " customers' sessions failed.");
+        }
+        return elapsed;
+    }
+
+    void session(String loginId, boolean newCustomer, Random random) {
+        if (newCustomer) {
+            time(Operation.REGISTER, () -> ByteMe.customerMenu(script("1", loginId, PASSWORD, "3"), system));
+        }
+        String login = time(Operation.LOGIN, () -> ByteMe.customerMenu(script("2", loginId, PASSWORD, "5"), system));
+        if (!login.contains("Login successful")) {
+            throw new IllegalStateException(loginId + " could not log in: " + login.trim());
+        }
+
+        for (int i = 1 + random.nextInt(3); i > 0; i--) {
+            Scanner browse = switch (random.nextInt(4)) {
+                case 0 -> script("1", "5");
+                case 1 -> script("2", KEYWORDS[random.nextInt(KEYWORDS.length)], "5");
+                case 2 -> script("3", String.valueOf(1 + random.nextInt(3)), "5");
+                default -> script("4", String.valueOf(1 + random.nextInt(2)), "5");
+            };
+            time(Operation.BROWSE, () -> {
+                ByteMe.browseMenu(browse, system);
+                return null;
+            });
+        }
+
+        for (int i = random.nextInt(4); i > 0; i--) {
+            String itemName = orderableItems.get(random.nextInt(orderableItems.size()));
+            Scanner add = script("1", itemName, String.valueOf(1 + random.nextInt(3)));
+            time(Operation.ADD_TO_CART, () -> ByteMe.cartOperations(add, system, loginId));
+        }
+
+        Cart cart = system.getCart(loginId);
+        if (!cart.isEmpty() && random.nextInt(10) < 8) {
+            // Pays the exact total, in cash or by card, as printed at checkout.
+            String total = Double.toString(cart.getTotal());
+            Scanner checkout = random.nextBoolean()
+                    ? script("5", "Hostel " + random.nextInt(12), "1", total)
+                    : script("5", "Hostel " + random.nextInt(12), "2", "4111111111111111", total);
+            time(Operation.CHECKOUT, () -> ByteMe.cartOperations(checkout, system, loginId));
+            if (cart.isEmpty()) {
+                ordersPlaced.incrementAndGet();
+            }
+        }
+
+        if (random.nextInt(10) < 3) {
+            time(Operation.ORDER_HISTORY, () -> {
+                ByteMe.orderTracking(script("3", "5"), system, loginId);
+                return null;
+            });
+        }
+
+        List<Order> history = system.getOrderHistory(loginId);
+        if (!history.isEmpty() && random.nextInt(100) < 15) {
+            Scanner reorder = script("4", String.valueOf(history.get(random.nextInt(history.size())).getId()), "5");
+            time(Operation.REORDER, () -> {
+                ByteMe.orderTracking(reorder, system, loginId);
+                return null;
+            });
+            ordersPlaced.incrementAndGet();
+        }
+        sessionsRun.incrementAndGet();
+    }
+
+    void reset() {
+        latencies.values().forEach(LatencyHistogram::reset);
+        ordersPlaced.set(0);
+        sessionsRun.set(0);
+    }
+
+    void report(int customers, int sessions, int threads, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%d customers x %d sessions on %d threads in %.2fs%n", customers, sessions, threads, seconds);
+        System.out.printf("%d sessions (%.0f/s), %d orders (%.0f/s)%n", sessionsRun.get(), sessionsRun.get() / seconds,
+                ordersPlaced.get(), ordersPlaced.get() / seconds);
+        for (Operation operation : Operation.values()) {
+            System.out.printf("  %-14s %s%n", operation.name().toLowerCase(Locale.ROOT),
+                    latencies.get(operation).summary(TimeUnit.MICROSECONDS));
+        }
+    }
+
+    public LatencyHistogram getLatencies(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    public long getOrdersPlaced() {
+        return ordersPlaced.get();
+    }
+
+    private <T> T time(Operation operation, Supplier<T> step) {
+        long start = System.nanoTime();
+        try {
+            return step.get();
+        } finally {
+            latencies.get(operation).recordSince(start);
+        }
+    }
+
+    // One answer per line, as a console user would type them. Amounts are parsed with '.' decimals
+    // whatever the machine's locale.
+    private static Scanner script(String... answers) {
+        return new Scanner(String.join("\n", answers) + "\n").useLocale(Locale.ROOT);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+// Told about every change to a ByteMeCanteenSystem's menu, in the order the changes were made.
+// Callbacks run on the mutating thread while it holds the menu lock, so they must be quick and must
+// not change the menu themselves; hand the work to another thread (as MenuTableModel does).
+interface MenuListener {
+    void itemAdded(FoodItem item);
+
+    void itemRemoved(FoodItem item);
+
+    // A price or availability change to an item on the menu.
+    void itemChanged(FoodItem item);
+}
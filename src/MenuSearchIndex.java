@@ -0,0 +1,78 @@
+import java.util.*;
+
+// Trigram inverted index over lower-cased menu item names.
+// A substring query only has to verify the items that contain all of its trigrams.
+class MenuSearchIndex {
+    static final int GRAM = 3;
+
+    private final HashMap<String, String> lowerNames = new HashMap<>();
+    private final HashMap<String, HashSet<String>> postings = new HashMap<>();
+
+    public void add(String key, FoodItem item) {
+        remove(key);
+        String lowerName = item.getName().toLowerCase();
+        lowerNames.put(key, lowerName);
+        for (String gram : grams(lowerName)) {
+            postings.computeIfAbsent(gram, k -> new HashSet<>()).add(key);
+        }
+    }
+
+    public void remove(String key) {
+        String lowerName = lowerNames.remove(key);
+        if (lowerName == null) {
+            return;
+        }
+        for (String gram : grams(lowerName)) {
+            Set<String> keys = postings.get(gram);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    public void clear() {
+        lowerNames.clear();
+        postings.clear();
+    }
+
+    // Returns the menu keys whose item name contains the keyword (ignoring case), in menu order.
+    public List<String> search(String keyword, NavigableMap<String, FoodItem> menu) {
+        String needle = keyword.toLowerCase();
+        List<String> keys = new ArrayList<>();
+        if (needle.length() < GRAM) {
+            for (String key : menu.keySet()) {
+                String lowerName = lowerNames.get(key);
+                if (lowerName != null && lowerName.contains(needle)) {
+                    keys.add(key);
+                }
+            }
+            return keys;
+        }
+
+        Set<String> smallest = null;
+        for (String gram : grams(needle)) {
+            Set<String> candidates = postings.get(gram);
+            if (candidates == null) {
+                return keys;
+            }
+            if (smallest == null || candidates.size() < smallest.size()) {
+                smallest = candidates;
+            }
+        }
+        for (String key : smallest) {
+            if (lowerNames.get(key).contains(needle)) {
+                keys.add(key);
+            }
+        }
+        keys.sort(menu.comparator());
+        return keys;
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+}
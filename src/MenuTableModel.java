@@ -0,0 +1,147 @@
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// The live menu as a table (name, category, price, available), kept up to date by listening to the
+// system rather than by reloading. Changes arrive on whichever thread made them and are queued; the
+// event dispatch thread applies everything queued in one pass and fires one row event per change,
+// so a burst of admin edits costs a single repaint. Rows are in no particular order (a removed row
+// is filled with the last one), because sorting and filtering are left to a TableRowSorter.
+// Create and use it on the event dispatch thread; close() stops listening.
+class MenuTableModel extends AbstractTableModel implements MenuListener {
+    private static final long serialVersionUID = 7113428839540871926L;
+    private static final String[] COLUMNS = {"Name", "Category", "Price", "Available"};
+    private static final Class<?>[] COLUMN_CLASSES = {String.class, String.class, Double.class, Boolean.class};
+
+    private enum Change { ADDED, REMOVED, CHANGED }
+
+    private record PendingChange(Change change, FoodItem item) {
+    }
+
+    private final transient ByteMeCanteenSystem system;
+    private final transient List<FoodItem> rows = new ArrayList<>();
+    private final transient IdentityHashMap<FoodItem, Integer> rowOf = new IdentityHashMap<>();
+    private final transient ConcurrentLinkedQueue<PendingChange> pending = new ConcurrentLinkedQueue<>();
+    private final transient AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    public MenuTableModel(ByteMeCanteenSystem system) {
+        this.system = system;
+        // Changes made after the snapshot are queued behind it; applying one the snapshot already
+        // reflects is harmless, since adds of present items and removes of absent ones are no-ops.
+        for (FoodItem item : system.addMenuListener(this)) {
+            rowOf.put(item, rows.size());
+            rows.add(item);
+        }
+    }
+
+    public void close() {
+        system.removeMenuListener(this);
+    }
+
+    public FoodItem getItemAt(int row) {
+        return rows.get(row);
+    }
+
+    @Override
+    public void itemAdded(FoodItem item) {
+        enqueue(Change.ADDED, item);
+    }
+
+    @Override
+    public void itemRemoved(FoodItem item) {
+        enqueue(Change.REMOVED, item);
+    }
+
+    @Override
+    public void itemChanged(FoodItem item) {
+        enqueue(Change.CHANGED, item);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_CLASSES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        FoodItem item = rows.get(row);
+        return switch (column) {
+            case 0 -> item.getName();
+            case 1 -> item.category;
+            case 2 -> item.price;
+            default -> item.available;
+        };
+    }
+
+    private void enqueue(Change change, FoodItem item) {
+        pending.add(new PendingChange(change, item));
+        if (drainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+
+    // Runs on the event dispatch thread.
+    void drain() {
+        drainScheduled.set(false);
+        PendingChange next;
+        while ((next = pending.poll()) != null) {
+            switch (next.change()) {
+                case ADDED -> add(next.item());
+                case REMOVED -> remove(next.item());
+                case CHANGED -> {
+                    Integer row = rowOf.get(next.item());
+                    if (row != null) {
+                        fireTableRowsUpdated(row, row);
+                    }
+                }
+            }
+        }
+    }
+
+    private void add(FoodItem item) {
+        Integer row = rowOf.get(item);
+        if (row != null) {
+            fireTableRowsUpdated(row, row);
+            return;
+        }
+        rowOf.put(item, rows.size());
+        rows.add(item);
+        fireTableRowsInserted(rows.size() - 1, rows.size() - 1);
+    }
+
+    private void remove(FoodItem item) {
+        Integer row = rowOf.remove(item);
+        if (row == null) {
+            return;
+        }
+        int last = rows.size() - 1;
+        FoodItem moved = rows.remove(last);
+        if (row != last) {
+            rows.set(row, moved);
+            rowOf.put(moved, row);
+        }
+        fireTableRowsDeleted(last, last);
+        if (row != last) {
+            fireTableRowsUpdated(row, row);
+        }
+    }
+}
@@ -0,0 +1,505 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+// Write-ahead log of every ByteMeCanteenSystem mutation, plus periodic snapshots.
+// Records are appended to numbered segments next to the snapshot file:
+//   [int length][long sequence][byte op][payload][int crc32]
+// Recovery loads the snapshot and replays every record newer than its logSequence.
+// Records are numbered and queued in order on the mutating thread; a GroupCommitQueue writer
+// writes and forces them in groups. Each append returns a future that completes once its record is
+// on disk, for callers that must not go on before then.
+class OperationLog implements Closeable {
+    static final byte ADD_ITEM = 1;
+    static final byte REMOVE_ITEM = 2;
+    static final byte UPDATE_ITEM = 3;
+    static final byte REGISTER = 4;
+    static final byte CREATE_ORDER = 5;
+    static final byte SET_STATUS = 6;
+    static final byte ADD_REVIEW = 7;
+    // Replaces CREATE_ORDER, which logged whole items rather than the order's captured lines.
+    static final byte PLACE_ORDER = 8;
+    // Replaces SET_STATUS, which addressed orders by their position in the customer's history.
+    static final byte SET_ORDER_STATUS = 9;
+
+    static final int SNAPSHOT_INTERVAL = 1000;
+    static final int QUEUE_CAPACITY = 4096;
+
+    private final File snapshotFile;
+    private final File directory;
+    private final String prefix;
+    private final ExecutorService snapshotter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "byteme-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // A record for the current segment, or (with next set) the switch to a new segment.
+    private record LogWrite(ByteBuffer record, FileChannel next, File nextFile) {
+    }
+
+    private ByteMeCanteenSystem system;
+    private GroupCommitQueue<LogWrite> writer;
+    // Numbers records and hands them to the writer in that order; the rest of an append runs
+    // outside it. A lock rather than a monitor, since submit blocks while the queue is full and a
+    // virtual thread waiting inside a monitor would hold on to its carrier.
+    private final ReentrantLock sequenceLock = new ReentrantLock();
+    // Only the writer thread uses these once recover() has returned.
+    private FileChannel channel;
+    private File channelFile;
+    private long segment;
+    private long sequence;
+    private int sinceSnapshot;
+    private int replayed;
+    private boolean snapshotPending;
+
+    public OperationLog(File snapshotFile) {
+        this.snapshotFile = snapshotFile.getAbsoluteFile();
+        this.directory = this.snapshotFile.getParentFile();
+        String name = this.snapshotFile.getName();
+        this.prefix = (name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name) + "-";
+    }
+
+    public ByteMeCanteenSystem recover() throws IOException {
+        long start = System.nanoTime();
+        if (system != null) {
+            system.closePagedHistory();
+        }
+        system = snapshotFile.exists() ? CanteenCodec.load(snapshotFile) : new ByteMeCanteenSystem();
+        sequence = system.logSequence;
+
+        List<File> segments = segments();
+        replayed = 0;
+        for (File file : segments) {
+            int count = replay(file);
+            if (count < 0) {
+                replayed -= count + 1;
+                break;
+            }
+            replayed += count;
+        }
+
+        segment = segments.isEmpty() ? 1 : segmentNumber(segments.get(segments.size() - 1)) + 1;
+        channelFile = segmentFile(segment);
+        channel = openSegment(channelFile);
+        writer = new GroupCommitQueue<>("byteme-wal", QUEUE_CAPACITY, this::writeGroup);
+        system.operationLog = this;
+        system.metrics.record(CanteenMetrics.Operation.LOAD, start);
+        return system;
+    }
+
+    public CompletableFuture<Void> addMenuItem(FoodItem item) {
+        return append(ADD_ITEM, out -> writeItem(out, item));
+    }
+
+    public CompletableFuture<Void> removeMenuItem(String name) {
+        return append(REMOVE_ITEM, out -> out.writeUTF(name));
+    }
+
+    public CompletableFuture<Void> updateMenuItem(FoodItem item) {
+        return append(UPDATE_ITEM, out -> writeItem(out, item));
+    }
+
+    public CompletableFuture<Void> registerCustomer(String loginId, String password) {
+        return append(REGISTER, out -> {
+            out.writeUTF(loginId);
+            out.writeUTF(password);
+        });
+    }
+
+    public CompletableFuture<Void> createOrder(Order order) {
+        return append(PLACE_ORDER, out -> {
+            out.writeUTF(order.loginId);
+            writeNullable(out, order.specialRequest);
+            out.writeInt(order.getLineCount());
+            for (int i = 0; i < order.getLineCount(); i++) {
+                out.writeUTF(order.getItemName(i));
+                out.writeInt(order.getQuantity(i));
+                out.writeLong(order.getUnitPriceCents(i));
+            }
+            out.writeLong(order.placedAt);
+            out.writeLong(order.id);
+        });
+    }
+
+    public CompletableFuture<Void> setOrderStatus(long orderId, OrderStatus status) {
+        return append(SET_ORDER_STATUS, out -> {
+            out.writeLong(orderId);
+            writeNullable(out, status.getLabel());
+        });
+    }
+
+    public CompletableFuture<Void> addReview(String itemName, Review review) {
+        return append(ADD_REVIEW, out -> {
+            out.writeUTF(itemName);
+            writeNullable(out, review.getCustomerName());
+            writeNullable(out, review.getReviewText());
+            out.writeInt(review.getRating());
+            out.writeLong(review.getReviewDate().getTime());
+        });
+    }
+
+    // Takes a snapshot on a background thread unless one is already queued.
+    public void snapshotAsync() {
+        sequenceLock.lock();
+        try {
+            if (snapshotPending || snapshotter.isShutdown()) {
+                return;
+            }
+            snapshotPending = true;
+            snapshotter.submit(() -> {
+                try {
+                    snapshot();
+                } catch (IOException e) {
+                    System.err.println("Error saving snapshot: " + e.getMessage());
+                }
+            });
+        } finally {
+            sequenceLock.unlock();
+        }
+    }
+
+    public void snapshot() throws IOException {
+        long start = System.nanoTime();
+        CanteenEvents.PersistenceFlush event = new CanteenEvents.PersistenceFlush();
+        event.begin();
+        CanteenCodec.Image image;
+        long snapshotSegment;
+        CompletableFuture<Void> rotated;
+        // The image and the log rotation happen atomically with respect to mutations, so every
+        // record in the segments before snapshotSegment is already contained in the image.
+        system.stateLock.writeLock().lock();
+        try {
+            sequenceLock.lock();
+            try {
+                snapshotPending = false;
+                system.logSequence = sequence;
+                image = CanteenCodec.capture(system, snapshotFile);
+                sinceSnapshot = 0;
+                segment++;
+                File next = segmentFile(segment);
+                rotated = writer.submit(new LogWrite(null, openSegment(next), next));
+                snapshotSegment = segment;
+            } finally {
+                sequenceLock.unlock();
+            }
+        } finally {
+            system.stateLock.writeLock().unlock();
+        }
+
+        // Pages still on disk are copied in only now, with no lock held.
+        CanteenCodec.write(image, snapshotFile);
+
+        // Older segments may still be taking the records queued before the rotation.
+        try {
+            rotated.join();
+        } catch (CompletionException e) {
+            throw new IOException("Could not rotate the operation log", e.getCause());
+        }
+        for (File file : segments()) {
+            if (segmentNumber(file) < snapshotSegment) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        system.metrics.record(CanteenMetrics.Operation.SNAPSHOT, start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "snapshot";
+            event.path = snapshotFile.getPath();
+            event.bytes = image.length();
+            event.commit();
+        }
+    }
+
+    // Writes a final snapshot so the next start does not need to replay anything, and lets go of
+    // the snapshot the system was loaded from.
+    @Override
+    public void close() throws IOException {
+        snapshotter.shutdown();
+        try {
+            snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshot();
+        writer.close();
+        channel.close();
+        system.closePagedHistory();
+    }
+
+    // Log records that the last recover() applied on top of the snapshot.
+    public int getReplayed() {
+        return replayed;
+    }
+
+    public int getQueued() {
+        return writer == null ? 0 : writer.getQueued();
+    }
+
+    private interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private CompletableFuture<Void> append(byte op, Payload payload) {
+        long start = System.nanoTime();
+        // The record is formatted with room for its sequence number, which is filled in below.
+        ByteBuffer buffer;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeLong(0);
+            out.writeByte(op);
+            payload.write(out);
+            out.writeInt(0);
+            out.flush();
+            buffer = ByteBuffer.wrap(bytes.toByteArray());
+        } catch (IOException e) {
+            System.err.println("Error writing to operation log: " + e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        }
+        int crcAt = buffer.capacity() - 4;
+        buffer.putInt(0, crcAt - 4);
+
+        CompletableFuture<Void> written;
+        boolean snapshotDue;
+        sequenceLock.lock();
+        try {
+            sequence++;
+            buffer.putLong(4, sequence);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 4, crcAt - 4);
+            buffer.putInt(crcAt, (int) crc.getValue());
+            written = writer.submit(new LogWrite(buffer, null, null));
+            snapshotDue = ++sinceSnapshot >= SNAPSHOT_INTERVAL;
+        } finally {
+            sequenceLock.unlock();
+        }
+        system.metrics.record(CanteenMetrics.Operation.LOG_APPEND, start);
+        if (snapshotDue) {
+            snapshotAsync();
+        }
+        return written;
+    }
+
+    // Returns the number of records applied, or -(count + 1) if the segment ended in a torn record.
+    // A partial length header, or a length the rest of the file cannot hold, is a torn record too.
+    private int replay(File file) throws IOException {
+        int count = 0;
+        long goodLength = 0;
+        long size = file.length();
+        boolean torn = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (goodLength < size) {
+                long left = size - goodLength;
+                int length = left >= Integer.BYTES ? in.readInt() : -1;
+                if (length < Long.BYTES + 1 || length > left - 2 * Integer.BYTES) {
+                    torn = true;
+                    break;
+                }
+                byte[] body = new byte[length];
+                int checksum;
+                try {
+                    in.readFully(body);
+                    checksum = in.readInt();
+                } catch (EOFException e) {
+                    torn = true;
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    torn = true;
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+                long recordSequence = record.readLong();
+                byte op = record.readByte();
+                if (recordSequence > sequence) {
+                    apply(op, record);
+                    sequence = recordSequence;
+                    count++;
+                }
+                goodLength += 4 + length + 4;
+            }
+        }
+        if (torn) {
+            try (FileChannel truncate = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                truncate.truncate(goodLength);
+            }
+            return -(count + 1);
+        }
+        return count;
+    }
+
+    private void apply(byte op, DataInputStream in) throws IOException {
+        switch (op) {
+            case ADD_ITEM -> system.addMenuItem(readItem(in));
+            case REMOVE_ITEM -> system.removeMenuItem(in.readUTF());
+            case UPDATE_ITEM -> {
+                FoodItem update = readItem(in);
+                FoodItem item = system.menu.get(update.name);
+                if (item != null) {
+                    item.setPrice(update.price);
+                    item.setAvailable(update.available);
+                }
+            }
+            case REGISTER -> system.customerAccounts.put(in.readUTF(), in.readUTF());
+            case CREATE_ORDER -> {
+                String loginId = in.readUTF();
+                String specialRequest = readNullable(in);
+                int size = in.readInt();
+                List<CartItem> items = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    // The logged item carries the price the order was placed at.
+                    items.add(new CartItem(readItem(in), in.readInt()));
+                }
+                Order order = new Order(items, specialRequest);
+                if (in.available() >= Long.BYTES) {
+                    order.placedAt = in.readLong();
+                }
+                system.addOrder(loginId, order);
+            }
+            case PLACE_ORDER -> {
+                String loginId = in.readUTF();
+                String specialRequest = readNullable(in);
+                int size = in.readInt();
+                String[] names = new String[size];
+                int[] quantities = new int[size];
+                long[] cents = new long[size];
+                for (int i = 0; i < size; i++) {
+                    names[i] = in.readUTF();
+                    quantities[i] = in.readInt();
+                    cents[i] = in.readLong();
+                }
+                Order order = new Order(names, quantities, cents, specialRequest);
+                order.placedAt = in.readLong();
+                if (in.available() >= Long.BYTES) {
+                    order.id = in.readLong();
+                }
+                system.addOrder(loginId, order);
+            }
+            case SET_STATUS -> {
+                String loginId = in.readUTF();
+                int index = in.readInt();
+                system.applyOrderStatus(system.loadedHistory(loginId).get(index), OrderStatus.migrate(readNullable(in)));
+            }
+            case SET_ORDER_STATUS -> {
+                Order order = system.getOrder(in.readLong());
+                OrderStatus status = OrderStatus.migrate(readNullable(in));
+                if (order != null) {
+                    system.applyOrderStatus(order, status);
+                }
+            }
+            case ADD_REVIEW -> {
+                FoodItem item = system.menu.get(in.readUTF());
+                Review review = new Review(readNullable(in), readNullable(in), in.readInt(), new Date(in.readLong()));
+                if (item != null) {
+                    item.replayReview(review);
+                }
+            }
+            default -> throw new IOException("Unknown operation " + op);
+        }
+    }
+
+    // Runs on the writer thread: one gathering write and one force per run of records, with a
+    // rotation ending the run for the old segment.
+    private void writeGroup(List<LogWrite> group) throws IOException {
+        List<ByteBuffer> records = new ArrayList<>(group.size());
+        for (LogWrite write : group) {
+            if (write.next() == null) {
+                records.add(write.record());
+                continue;
+            }
+            try {
+                commit(records);
+            } finally {
+                records.clear();
+                channel.close();
+                channel = write.next();
+                channelFile = write.nextFile();
+            }
+        }
+        commit(records);
+    }
+
+    private void commit(List<ByteBuffer> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        CanteenEvents.PersistenceFlush event = new CanteenEvents.PersistenceFlush();
+        event.begin();
+        ByteBuffer[] buffers = records.toArray(new ByteBuffer[0]);
+        long bytes = 0;
+        for (ByteBuffer buffer : buffers) {
+            bytes += buffer.remaining();
+        }
+        for (long written = 0; written < bytes; ) {
+            written += channel.write(buffers);
+        }
+        channel.force(false);
+        system.metrics.record(CanteenMetrics.Operation.LOG_COMMIT, start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "logCommit";
+            event.path = channelFile.getPath();
+            event.bytes = bytes;
+            event.records = buffers.length;
+            event.commit();
+        }
+    }
+
+    private static FileChannel openSegment(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private File segmentFile(long number) {
+        return new File(directory, prefix + String.format("%06d", number) + ".log");
+    }
+
+    private long segmentNumber(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - ".log".length()));
+    }
+
+    private List<File> segments() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".log")
+                && name.substring(prefix.length(), name.length() - 4).chars().allMatch(Character::isDigit));
+        List<File> segments = new ArrayList<>(files == null ? List.of() : Arrays.asList(files));
+        segments.sort(Comparator.comparingLong(this::segmentNumber));
+        return segments;
+    }
+
+    private static void writeItem(DataOutputStream out, FoodItem item) throws IOException {
+        out.writeUTF(item.name);
+        out.writeDouble(item.price);
+        writeNullable(out, item.category);
+        out.writeBoolean(item.available);
+    }
+
+    private static FoodItem readItem(DataInputStream in) throws IOException {
+        return new FoodItem(in.readUTF(), in.readDouble(), readNullable(in), in.readBoolean());
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
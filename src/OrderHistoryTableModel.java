@@ -0,0 +1,81 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.List;
+
+// A customer's orders as table rows (order number, items, total, status), read straight from the
+// Order objects when a cell is painted, so only the rows on screen are ever formatted. Rows are
+// appended a page at a time as MyFrame's background loader delivers them. Status is read live,
+// so a repaint shows the kitchen's latest update. Must be used on the event dispatch thread.
+class OrderHistoryTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = -4720935816266048151L;
+    static final int PAGE_SIZE = 200;
+
+    private static final String[] COLUMNS = {"Order #", "Items", "Total", "Status"};
+    private static final Class<?>[] COLUMN_CLASSES = {Long.class, String.class, String.class, OrderStatus.class};
+
+    private final transient List<Order> orders = new ArrayList<>();
+
+    public void clear() {
+        int rows = orders.size();
+        if (rows > 0) {
+            orders.clear();
+            fireTableRowsDeleted(0, rows - 1);
+        }
+    }
+
+    public void addOrders(List<Order> page) {
+        if (page.isEmpty()) {
+            return;
+        }
+        int first = orders.size();
+        orders.addAll(page);
+        fireTableRowsInserted(first, orders.size() - 1);
+    }
+
+    public Order getOrderAt(int row) {
+        return orders.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return orders.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_CLASSES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Order order = orders.get(row);
+        return switch (column) {
+            case 0 -> order.getId();
+            case 1 -> describeItems(order);
+            case 2 -> String.format("$%.2f", order.getTotalCents() / 100.0);
+            default -> order.getStatus();
+        };
+    }
+
+    // e.g. "Burger x2, Soda x1"
+    private static String describeItems(Order order) {
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i < order.getLineCount(); i++) {
+            if (i > 0) {
+                items.append(", ");
+            }
+            items.append(order.getItemName(i)).append(" x").append(order.getQuantity(i));
+        }
+        return items.toString();
+    }
+}
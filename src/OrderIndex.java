@@ -0,0 +1,62 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Order lookup by id. Ids are handed out densely (1, 2, 3, ...), so the index is a plain array
+// addressed by id, split into fixed-size chunks that are allocated as ids reach them. Existing
+// chunks are never copied or rehashed; only the small chunk directory grows.
+// Reads take no lock; puts that need a new chunk synchronize on the index.
+class OrderIndex {
+    static final int CHUNK_BITS = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private volatile AtomicReferenceArray<Order>[] chunks = newChunks(0);
+
+    public Order get(long id) {
+        if (id <= 0) {
+            return null;
+        }
+        AtomicReferenceArray<Order>[] current = chunks;
+        long chunk = id >>> CHUNK_BITS;
+        if (chunk >= current.length || current[(int) chunk] == null) {
+            return null;
+        }
+        return current[(int) chunk].get((int) (id & (CHUNK_SIZE - 1)));
+    }
+
+    public void put(Order order) {
+        chunk(order.id >>> CHUNK_BITS).set((int) (order.id & (CHUNK_SIZE - 1)), order);
+    }
+
+    // Removes the order only if it is still the one indexed under its id.
+    public void remove(Order order) {
+        AtomicReferenceArray<Order>[] current = chunks;
+        long chunk = order.id >>> CHUNK_BITS;
+        if (order.id > 0 && chunk < current.length && current[(int) chunk] != null) {
+            current[(int) chunk].compareAndSet((int) (order.id & (CHUNK_SIZE - 1)), order, null);
+        }
+    }
+
+    private AtomicReferenceArray<Order> chunk(long chunk) {
+        AtomicReferenceArray<Order>[] current = chunks;
+        if (chunk < current.length && current[(int) chunk] != null) {
+            return current[(int) chunk];
+        }
+        synchronized (this) {
+            current = chunks;
+            if (chunk >= current.length) {
+                current = Arrays.copyOf(current, (int) Math.max(chunk + 1, current.length * 2L));
+            }
+            if (current[(int) chunk] == null) {
+                current[(int) chunk] = new AtomicReferenceArray<>(CHUNK_SIZE);
+            }
+            chunks = current;
+            return current[(int) chunk];
+        }
+    }
+
+    // Java has no generic array creation; the directory only ever holds AtomicReferenceArray<Order>.
+    @SuppressWarnings("unchecked")
+    private static AtomicReferenceArray<Order>[] newChunks(int length) {
+        return (AtomicReferenceArray<Order>[]) new AtomicReferenceArray<?>[length];
+    }
+}
@@ -0,0 +1,188 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Append-only order journal behind each customer's <loginId>.txt.
+// Every record is one line ("Order #<id>: ..."), so a checkout only writes the new order.
+// Callers serialize appends per customer (ByteMeCanteenSystem holds the customer's lock) and the
+// lines are formatted on their thread; the files are written by a GroupCommitQueue writer, with
+// one write per customer per group. The journal is a view that compaction rebuilds from memory,
+// so its writes are not forced to disk; readTextView turns it back into text. close() writes
+// whatever is still queued.
+class OrderJournal implements Closeable {
+    static final String HEADER = "Your Order History:";
+    static final String EMPTY = "No order history found.";
+    static final int COMPACTION_INTERVAL = 64;
+    static final int QUEUE_CAPACITY = 4096;
+
+    // New lines for the end of a customer's file, or (rewrite) the file's whole new content.
+    private record JournalWrite(String loginId, String text, boolean rewrite) {
+    }
+
+    private final File directory;
+    private final ConcurrentHashMap<String, Integer> appendsSinceCompaction = new ConcurrentHashMap<>();
+    private final GroupCommitQueue<JournalWrite> writer;
+
+    public OrderJournal(File directory) {
+        this.directory = directory;
+        this.writer = new GroupCommitQueue<>("byteme-journal", QUEUE_CAPACITY, this::writeGroup);
+    }
+
+    public File journalFile(String loginId) {
+        return new File(directory, loginId + ".txt");
+    }
+
+    // Returns a future that completes once the customer's file has the new order.
+    public CompletableFuture<Void> append(String loginId, List<Order> orders) {
+        Integer appends = appendsSinceCompaction.get(loginId);
+        if (appends == null) {
+            appends = seedAppends(loginId, orders);
+        }
+        // Every COMPACTION_INTERVAL writes the file is rewritten from memory, which also picks up
+        // status changes made since the last rewrite.
+        if (appends + 1 >= COMPACTION_INTERVAL) {
+            return compact(loginId, orders);
+        }
+        appendsSinceCompaction.put(loginId, appends + 1);
+        return writer.submit(new JournalWrite(loginId, record(orders.get(orders.size() - 1)), false));
+    }
+
+    public CompletableFuture<Void> compact(String loginId, List<Order> orders) {
+        StringBuilder text = new StringBuilder();
+        if (orders.isEmpty()) {
+            text.append(EMPTY);
+        } else {
+            text.append(HEADER).append('\n');
+            for (Order order : orders) {
+                text.append(record(order));
+            }
+        }
+        appendsSinceCompaction.put(loginId, 0);
+        return writer.submit(new JournalWrite(loginId, text.toString(), true));
+    }
+
+    // Rebuilds the text view from the journal. A torn last record (no trailing newline) is dropped.
+    public String readTextView(String loginId) {
+        File file = journalFile(loginId);
+        if (!file.exists()) {
+            return EMPTY;
+        }
+        String content;
+        try {
+            content = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+            return EMPTY;
+        }
+        int end = content.lastIndexOf('\n');
+        if (end < 0) {
+            return content.startsWith(HEADER) ? EMPTY : content;
+        }
+        StringBuilder view = new StringBuilder();
+        for (String line : content.substring(0, end).split("\n")) {
+            view.append(unescape(line)).append('\n');
+        }
+        return view.toString();
+    }
+
+    public int getQueued() {
+        return writer.getQueued();
+    }
+
+    @Override
+    public void close() {
+        writer.close();
+    }
+
+    // Runs on the writer thread. Each customer's writes in the group collapse into one: the last
+    // rewrite plus the lines after it, or just the new lines.
+    private void writeGroup(List<JournalWrite> group) throws IOException {
+        Map<String, List<JournalWrite>> byCustomer = new LinkedHashMap<>();
+        for (JournalWrite write : group) {
+            byCustomer.computeIfAbsent(write.loginId(), k -> new ArrayList<>()).add(write);
+        }
+        IOException failure = null;
+        for (Map.Entry<String, List<JournalWrite>> entry : byCustomer.entrySet()) {
+            List<JournalWrite> writes = entry.getValue();
+            int from = writes.size() - 1;
+            while (from > 0 && !writes.get(from).rewrite()) {
+                from--;
+            }
+            StringBuilder text = new StringBuilder();
+            for (JournalWrite write : writes.subList(from, writes.size())) {
+                text.append(write.text());
+            }
+            try {
+                if (writes.get(from).rewrite()) {
+                    rewrite(entry.getKey(), text.toString());
+                } else {
+                    appendLines(entry.getKey(), text.toString());
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void rewrite(String loginId, String content) throws IOException {
+        File temp = new File(directory, loginId + ".txt.tmp");
+        Files.writeString(temp.toPath(), content, StandardCharsets.UTF_8);
+        Files.move(temp.toPath(), journalFile(loginId).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void appendLines(String loginId, String lines) throws IOException {
+        try (FileChannel channel = FileChannel.open(journalFile(loginId).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            String text = channel.size() == 0 ? HEADER + "\n" + lines : lines;
+            ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    // Appends already in the file when this journal first writes for the customer. The file holds
+    // one line per earlier order, so the count carries over from session to session and compaction
+    // still comes every COMPACTION_INTERVAL orders; a missing or empty file with earlier orders to
+    // hold is rewritten straight away.
+    private int seedAppends(String loginId, List<Order> orders) {
+        int earlier = orders.size() - 1;
+        if (earlier > 0 && journalFile(loginId).length() == 0) {
+            return COMPACTION_INTERVAL;
+        }
+        return earlier % COMPACTION_INTERVAL;
+    }
+
+    // One line per order. Backslashes are doubled before newlines become "\\n", so unescape can
+    // tell the two apart.
+    private static String record(Order order) {
+        return "Order #" + order.getId() + ": " + order.toString().replace("\\", "\\\\").replace("\n", "\\n") + "\n";
+    }
+
+    private static String unescape(String line) {
+        StringBuilder text = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                char next = line.charAt(++i);
+                text.append(next == 'n' ? '\n' : next);
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,78 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// Which customer placed each order, so an order can be found by id while its customer's history is
+// still on disk. A version 9 snapshot keeps the table beside it, in <snapshot>.owners: an i32 per
+// order id (1, 2, 3, ...), the customer's number, or -1. Customers are numbered in the order they
+// first appear and keep their number for good (the snapshot's page directory is in number order),
+// and an order never changes hands, so a snapshot only writes the entries for ids placed since the
+// table was last written, instead of the whole table again.
+class OrderOwners {
+    private final List<String> customers = new ArrayList<>();
+    private final HashMap<String, Integer> numbers = new HashMap<>();
+    // The table these numbers were last written to, and how many of its entries are in it.
+    private File file;
+    private long written;
+
+    OrderOwners(String[] customers, File file, long written) {
+        for (String loginId : customers) {
+            number(loginId);
+        }
+        this.file = file;
+        this.written = written;
+    }
+
+    static File fileFor(File snapshotFile) {
+        return new File(snapshotFile.getAbsolutePath() + ".owners");
+    }
+
+    public synchronized int number(String loginId) {
+        Integer number = numbers.get(loginId);
+        if (number == null) {
+            number = customers.size();
+            customers.add(loginId);
+            numbers.put(loginId, number);
+        }
+        return number;
+    }
+
+    // Every numbered customer, by number.
+    public synchronized List<String> getCustomers() {
+        return new ArrayList<>(customers);
+    }
+
+    // Entries the table at file already holds for these numbers; 0 for any other file.
+    public synchronized long getWritten(File file) {
+        return file.equals(this.file) ? written : 0;
+    }
+
+    // Writes entries[i] as the owner of order first + i and forces it to disk. Entries at or below
+    // what the table already holds are rewritten with the same values, so a snapshot that fails
+    // after this leaves the table as good as before.
+    public synchronized void write(File file, long first, int[] entries) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+            long position = (first - 1) * Integer.BYTES;
+            for (int i = 0; i < entries.length; i++) {
+                buffer.putInt(entries[i]);
+                if (!buffer.hasRemaining() || i == entries.length - 1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                    buffer.clear();
+                }
+            }
+            channel.force(false);
+        }
+        long upTo = first - 1 + entries.length;
+        written = file.equals(this.file) ? Math.max(written, upTo) : upTo;
+        this.file = file;
+    }
+}
@@ -0,0 +1,82 @@
+import java.util.HashMap;
+import java.util.Locale;
+
+// Where an order is in its life. The kitchen moves an order forward one step at a time
+// (Pending -> Preparing -> Out for Delivery -> Completed); a live order can be canceled, and any
+// order not already refunded can be refunded. Completed, Canceled and Refunded are terminal.
+enum OrderStatus {
+    PENDING("Pending"),
+    PREPARING("Preparing"),
+    OUT_FOR_DELIVERY("Out for Delivery"),
+    COMPLETED("Completed"),
+    CANCELED("Canceled"),
+    REFUNDED("Refunded");
+
+    private static final OrderStatus[] VALUES = values();
+    private static final HashMap<String, OrderStatus> BY_LABEL = new HashMap<>();
+    static {
+        for (OrderStatus status : VALUES) {
+            BY_LABEL.put(status.label.toLowerCase(Locale.ROOT), status);
+        }
+    }
+
+    private final String label;
+
+    OrderStatus(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public boolean isTerminal() {
+        return this == COMPLETED || isReversed();
+    }
+
+    // Canceled and refunded orders do not count towards sales.
+    public boolean isReversed() {
+        return this == CANCELED || this == REFUNDED;
+    }
+
+    public boolean canBecome(OrderStatus next) {
+        return switch (next) {
+            case CANCELED -> !isTerminal();
+            case REFUNDED -> this != REFUNDED;
+            case PENDING -> false;
+            default -> !isTerminal() && next.ordinal() == ordinal() + 1;
+        };
+    }
+
+    // The statuses an admin may move an order to from this one, in lifecycle order.
+    public String describeNext() {
+        StringBuilder next = new StringBuilder();
+        for (OrderStatus status : VALUES) {
+            if (canBecome(status)) {
+                next.append(next.length() == 0 ? "" : ", ").append(status.label);
+            }
+        }
+        return next.toString();
+    }
+
+    static OrderStatus ofOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    // Parses a status as typed by an admin (case and surrounding spaces ignored); null if unknown.
+    public static OrderStatus parse(String label) {
+        return label == null ? null : BY_LABEL.get(label.trim().toLowerCase(Locale.ROOT));
+    }
+
+    // Statuses saved before they were checked were free text. Anything unrecognised (or missing)
+    // was never a live kitchen state, so it is treated as finished.
+    static OrderStatus migrate(String label) {
+        OrderStatus status = parse(label);
+        return status != null ? status : COMPLETED;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,236 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+// The order histories a version 8 snapshot left on disk. Each customer's orders are one page of the
+// snapshot; CanteenCodec.load reads only the menu, the accounts and the page directory, plus the
+// pages of customers with an order still in the kitchen or placed in the last day. Every other page
+// is read the first time the customer's history is needed. Pages read in are kept in least recently
+// used order and dropped again once they hold more than capacity orders, but only while the history
+// is still what the page says: a customer whose orders change is pinned in memory, and the next
+// snapshot writes their history from there. Orders are found by id through the owners table (see
+// OrderOwners), which holds customer numbers, the same as directory indexes. The snapshot file and
+// the table stay open until close, which the owner calls once the system is replaced or shut down;
+// later snapshots replace the file by renaming, and only add entries to the table past the
+// snapshot's last order id, so what this reads keeps its contents until then.
+class PagedOrderHistory implements Closeable {
+    static final int DEFAULT_CAPACITY = 100_000;
+
+    interface Source extends Closeable {
+        byte[] read(long position, int length) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    record Page(long position, int length, int orders) {
+    }
+
+    private static final int PAGE_IN_STRIPES = 64;
+
+    private final Source source;
+    private final Source owners;
+    private final String[] customers;
+    // One int per order id (1, 2, 3, ...) in owners, from here on: the directory index of the
+    // order's customer, or -1.
+    private final long ownersPosition;
+    // Serializes reading in one customer's page; a lock rather than a monitor, since it is held
+    // across the read and a virtual thread blocked in a monitor would hold on to its carrier.
+    private final ReentrantLock[] pageInLocks = new ReentrantLock[PAGE_IN_STRIPES];
+    private final long lastOrderId;
+    private final long[] statusCounts;
+    // Customers whose history is still exactly their page, read in or not.
+    private final HashMap<String, Page> pages = new HashMap<>();
+    // The read-in part of pages, least recently used first.
+    private final LinkedHashMap<String, Page> loaded = new LinkedHashMap<>(16, 0.75f, true);
+    private long loadedOrders;
+    private int capacity = DEFAULT_CAPACITY;
+    private long pageIns;
+    private long evictions;
+
+    PagedOrderHistory(Source source, Source owners, String[] customers, long ownersPosition, long lastOrderId, long[] statusCounts) {
+        this.source = source;
+        this.owners = owners;
+        this.customers = customers;
+        this.ownersPosition = ownersPosition;
+        this.lastOrderId = lastOrderId;
+        this.statusCounts = statusCounts;
+        Arrays.setAll(pageInLocks, i -> new ReentrantLock());
+    }
+
+    synchronized void add(String loginId, Page page) {
+        pages.put(loginId, page);
+    }
+
+    // Ids go up to here, whether or not their orders have been read in.
+    public long getLastOrderId() {
+        return lastOrderId;
+    }
+
+    // Orders in each status, by ordinal, when the snapshot was written.
+    public long[] getStatusCounts() {
+        return statusCounts.clone();
+    }
+
+    // Held by ByteMeCanteenSystem around reading in the customer's page and publishing it.
+    ReentrantLock pageInLock(String loginId) {
+        int hash = loginId.hashCode();
+        return pageInLocks[(hash ^ (hash >>> 16)) & (PAGE_IN_STRIPES - 1)];
+    }
+
+    // Reads in the customer's page; null if their history is not on disk or is already read in.
+    // Callers hold pageInLock, so a page is read once.
+    public List<Order> read(String loginId) {
+        Page page;
+        synchronized (this) {
+            page = pages.get(loginId);
+            if (page == null || loaded.containsKey(loginId)) {
+                return null;
+            }
+        }
+        List<Order> orders = decode(page);
+        synchronized (this) {
+            loaded.put(loginId, page);
+            loadedOrders += page.orders();
+            pageIns++;
+        }
+        return orders;
+    }
+
+    // Marks the customer's history as used, for the LRU order.
+    public synchronized void touch(String loginId) {
+        loaded.get(loginId);
+    }
+
+    public synchronized boolean isOverCapacity() {
+        return loadedOrders > capacity;
+    }
+
+    // Read-in customers to drop, oldest use first, until the rest fit.
+    public synchronized List<String> getEvictionCandidates() {
+        List<String> candidates = new ArrayList<>();
+        long remaining = loadedOrders;
+        for (Map.Entry<String, Page> entry : loaded.entrySet()) {
+            if (remaining <= capacity) {
+                break;
+            }
+            candidates.add(entry.getKey());
+            remaining -= entry.getValue().orders();
+        }
+        return candidates;
+    }
+
+    // Returns false if the history has changed since it was read in and must stay in memory.
+    public synchronized boolean evict(String loginId) {
+        Page page = loaded.remove(loginId);
+        if (page == null) {
+            return false;
+        }
+        loadedOrders -= page.orders();
+        evictions++;
+        return true;
+    }
+
+    // The customer's history is about to differ from their page. Callers have read it in first.
+    public synchronized void pin(String loginId) {
+        Page page = pages.remove(loginId);
+        if (page != null && loaded.remove(loginId) != null) {
+            loadedOrders -= page.orders();
+        }
+    }
+
+    // The customer whose page holds this order, if that page has not been read in.
+    public String ownerOf(long id) {
+        if (id <= 0 || id > lastOrderId) {
+            return null;
+        }
+        int index;
+        try {
+            index = ByteBuffer.wrap(owners.read(ownersPosition + (id - 1) * Integer.BYTES, Integer.BYTES)).getInt();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the order directory", e);
+        }
+        if (index < 0 || index >= customers.length) {
+            return null;
+        }
+        String loginId = customers[index];
+        synchronized (this) {
+            return pages.containsKey(loginId) && !loaded.containsKey(loginId) ? loginId : null;
+        }
+    }
+
+    // Customers whose history has not been read in, with their pages.
+    public synchronized Map<String, Page> getUnloaded() {
+        Map<String, Page> unloaded = new LinkedHashMap<>();
+        pages.forEach((loginId, page) -> {
+            if (!loaded.containsKey(loginId)) {
+                unloaded.put(loginId, page);
+            }
+        });
+        return unloaded;
+    }
+
+    // The page exactly as the snapshot holds it, for copying into the next one.
+    public byte[] readPage(Page page) {
+        try {
+            return source.read(page.position(), page.length());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read order history", e);
+        }
+    }
+
+    // The owners of orders first .. first + entries.length - 1, copied into entries wherever it
+    // holds -2. Customer numbers never change, so the table's entries carry over as they are.
+    public void readOwners(long first, int[] entries) {
+        int chunk = 16 * 1024;
+        long last = Math.min(lastOrderId, first + entries.length - 1);
+        try {
+            for (long from = first; from <= last; from += chunk) {
+                int count = (int) Math.min(chunk, last - from + 1);
+                ByteBuffer table = ByteBuffer.wrap(owners.read(ownersPosition + (from - 1) * Integer.BYTES, count * Integer.BYTES));
+                for (int i = 0; i < count; i++) {
+                    int owner = table.getInt();
+                    int at = (int) (from - first) + i;
+                    if (entries[at] == -2) {
+                        entries[at] = owner;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the order directory", e);
+        }
+    }
+
+    synchronized void setCapacity(int orders) {
+        capacity = orders;
+    }
+
+    public synchronized long getPageIns() {
+        return pageIns;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            source.close();
+        } finally {
+            owners.close();
+        }
+    }
+
+    private List<Order> decode(Page page) {
+        try {
+            return CanteenCodec.decodePage(readPage(page));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read order history", e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import java.time.Clock;
+import java.util.*;
+
+// Approximate "top items in the last N minutes" for windows of up to a day.
+// Sales are counted in one-minute buckets held in a ring of DAY_MINUTES buckets. Each bucket is a
+// Space-Saving summary of at most CAPACITY counters: when a new item arrives at a full bucket it
+// takes over the smallest counter (and inherits its count as possible error). Memory is bounded by
+// DAY_MINUTES * CAPACITY counters and an update touches at most CAPACITY counters.
+class PopularItemsTracker {
+    static final int DAY_MINUTES = 24 * 60;
+    static final int CAPACITY = 32;
+    private static final long MINUTE_MILLIS = 60_000;
+
+    private final Clock clock;
+    private final Bucket[] ring = new Bucket[DAY_MINUTES];
+
+    public PopularItemsTracker() {
+        this(Clock.systemDefaultZone());
+    }
+
+    PopularItemsTracker(Clock clock) {
+        this.clock = clock;
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Bucket();
+        }
+    }
+
+    public void record(Order order) {
+        for (int i = 0; i < order.getLineCount(); i++) {
+            record(order.getItemName(i), order.getQuantity(i), order.placedAt);
+        }
+    }
+
+    public void record(String itemName, long quantity, long timeMillis) {
+        long minute = Math.floorDiv(timeMillis, MINUTE_MILLIS);
+        long now = Math.floorDiv(clock.millis(), MINUTE_MILLIS);
+        if (quantity <= 0 || minute <= now - DAY_MINUTES || minute > now) {
+            return;
+        }
+        Bucket bucket = ring[(int) Math.floorMod(minute, (long) DAY_MINUTES)];
+        synchronized (bucket) {
+            if (bucket.minute != minute) {
+                bucket.reset(minute);
+            }
+            bucket.add(itemName, quantity);
+        }
+    }
+
+    // The k items with the highest estimated sales in the last windowMinutes minutes.
+    public List<Map.Entry<String, Long>> topItems(int windowMinutes, int k) {
+        long now = Math.floorDiv(clock.millis(), MINUTE_MILLIS);
+        int window = Math.min(windowMinutes, DAY_MINUTES);
+        HashMap<String, Long> totals = new HashMap<>();
+        for (long minute = now - window + 1; minute <= now; minute++) {
+            Bucket bucket = ring[(int) Math.floorMod(minute, (long) DAY_MINUTES)];
+            synchronized (bucket) {
+                if (bucket.minute == minute) {
+                    for (int i = 0; i < bucket.size; i++) {
+                        totals.merge(bucket.items[i], bucket.counts[i], Long::sum);
+                    }
+                }
+            }
+        }
+        List<Map.Entry<String, Long>> top = new ArrayList<>(totals.entrySet());
+        top.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        return top.subList(0, Math.min(k, top.size()));
+    }
+
+    private static class Bucket {
+        long minute = Long.MIN_VALUE;
+        final String[] items = new String[CAPACITY];
+        final long[] counts = new long[CAPACITY];
+        int size;
+
+        void reset(long minute) {
+            this.minute = minute;
+            Arrays.fill(items, null);
+            size = 0;
+        }
+
+        void add(String item, long quantity) {
+            int smallest = 0;
+            for (int i = 0; i < size; i++) {
+                if (items[i].equals(item)) {
+                    counts[i] += quantity;
+                    return;
+                }
+                if (counts[i] < counts[smallest]) {
+                    smallest = i;
+                }
+            }
+            if (size < CAPACITY) {
+                items[size] = item;
+                counts[size] = quantity;
+                size++;
+            } else {
+                items[smallest] = item;
+                counts[smallest] += quantity;
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.*;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+// Append-only review segments, one file per menu item, kept out of the snapshot so that saving
+// the menu and orders never writes (or loads) review text. Records are [int length][payload][crc32].
+// FoodItem loads an item's segment the first time its reviews are read or added to, and holds its
+// own lock while it does, so each segment has a single reader/writer at a time.
+class ReviewStore {
+    private final File directory;
+
+    public ReviewStore(File directory) {
+        this.directory = directory;
+    }
+
+    public boolean hasSegment(String itemName) {
+        return segmentFile(itemName).exists();
+    }
+
+    // Reads an item's reviews, oldest first. A torn last record is dropped and cut off the file.
+    public List<Review> read(String itemName) {
+        List<Review> reviews = new ArrayList<>();
+        File file = segmentFile(itemName);
+        if (!file.exists()) {
+            return reviews;
+        }
+        long size = file.length();
+        long goodLength = 0;
+        boolean torn = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (goodLength < size) {
+                long left = size - goodLength;
+                // A length that runs past the end of the file is a torn or corrupt record, never an allocation.
+                int length = left >= Integer.BYTES ? in.readInt() : -1;
+                if (length < 0 || length > left - 2 * Integer.BYTES) {
+                    torn = true;
+                    break;
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                int checksum = in.readInt();
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    torn = true;
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+                Review review;
+                try {
+                    review = new Review(readNullable(record), readNullable(record), record.readInt(), new Date(record.readLong()));
+                } catch (EOFException e) {
+                    torn = true;
+                    break;
+                }
+                reviews.add(review);
+                goodLength += 4 + length + 4;
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading reviews: " + e.getMessage());
+            return reviews;
+        }
+        if (torn) {
+            try (FileChannel truncate = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                truncate.truncate(goodLength);
+            } catch (IOException e) {
+                System.err.println("Error reading reviews: " + e.getMessage());
+            }
+        }
+        return reviews;
+    }
+
+    public void append(String itemName, List<Review> reviews) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Review review : reviews) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(body);
+            writeNullable(record, review.getCustomerName());
+            writeNullable(record, review.getReviewText());
+            record.writeInt(review.getRating());
+            record.writeLong(review.getReviewDate().getTime());
+            record.flush();
+
+            CRC32 crc = new CRC32();
+            crc.update(body.toByteArray());
+            out.writeInt(body.size());
+            body.writeTo(out);
+            out.writeInt((int) crc.getValue());
+        }
+        out.flush();
+
+        CanteenEvents.PersistenceFlush event = new CanteenEvents.PersistenceFlush();
+        event.begin();
+        File file = segmentFile(itemName);
+        directory.mkdirs();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "reviewAppend";
+            event.path = file.getPath();
+            event.bytes = bytes.size();
+            event.commit();
+        }
+    }
+
+    // Menu lookups ignore case, so segments do too.
+    private File segmentFile(String itemName) {
+        return new File(directory, URLEncoder.encode(itemName.toLowerCase(Locale.ROOT), StandardCharsets.UTF_8) + ".reviews");
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,92 @@
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Today's sales, kept up to date as orders are placed, canceled and refunded, so the admin report
+// never rescans order history. Counters are LongAdders, which stripe updates across threads.
+// The first update or read on a new day starts the counters again from zero.
+class SalesReport {
+    private final Clock clock;
+    private final LongAdder salesCents = new LongAdder();
+    private final LongAdder orderCount = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> itemQuantities = new ConcurrentHashMap<>();
+    private volatile LocalDate day;
+
+    public SalesReport() {
+        this(Clock.systemDefaultZone());
+    }
+
+    SalesReport(Clock clock) {
+        this.clock = clock;
+        this.day = LocalDate.now(clock);
+    }
+
+    public void orderPlaced(Order order) {
+        add(order, 1);
+    }
+
+    public void orderReversed(Order order) {
+        add(order, -1);
+    }
+
+    public LocalDate getDay() {
+        rollOver();
+        return day;
+    }
+
+    public long getTotalSalesCents() {
+        rollOver();
+        return salesCents.sum();
+    }
+
+    public long getOrderCount() {
+        rollOver();
+        return orderCount.sum();
+    }
+
+    // Items sold today, most sold first (ties by name).
+    public List<Map.Entry<String, Long>> getMostPopularItems(int limit) {
+        rollOver();
+        List<Map.Entry<String, Long>> items = new ArrayList<>();
+        itemQuantities.forEach((name, quantity) -> {
+            long sold = quantity.sum();
+            if (sold > 0) {
+                items.add(Map.entry(name, sold));
+            }
+        });
+        items.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        return items.subList(0, Math.min(limit, items.size()));
+    }
+
+    public synchronized void reset() {
+        salesCents.reset();
+        orderCount.reset();
+        itemQuantities.clear();
+        day = LocalDate.now(clock);
+    }
+
+    private void add(Order order, int sign) {
+        rollOver();
+        if (!LocalDate.ofInstant(Instant.ofEpochMilli(order.placedAt), clock.getZone()).equals(day)) {
+            return;
+        }
+        salesCents.add(sign * order.getTotalCents());
+        orderCount.add(sign);
+        for (int i = 0; i < order.getLineCount(); i++) {
+            itemQuantities.computeIfAbsent(order.getItemName(i), k -> new LongAdder()).add((long) sign * order.getQuantity(i));
+        }
+    }
+
+    private void rollOver() {
+        if (!LocalDate.now(clock).equals(day)) {
+            synchronized (this) {
+                if (!LocalDate.now(clock).equals(day)) {
+                    reset();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+import java.io.PrintStream;
+
+// Where the interactive menus print. Defaults to System.out; CanteenServer binds each connection's
+// stream to the virtual thread running that session, so the same menu code serves every till.
+class SessionIO {
+    private static final ThreadLocal<PrintStream> OUT = new ThreadLocal<>();
+
+    private SessionIO() {
+    }
+
+    public static PrintStream out() {
+        PrintStream out = OUT.get();
+        return out != null ? out : System.out;
+    }
+
+    public static boolean isRemote() {
+        return OUT.get() != null;
+    }
+
+    public static void bind(PrintStream out) {
+        OUT.set(out);
+    }
+
+    public static void unbind() {
+        OUT.remove();
+    }
+}